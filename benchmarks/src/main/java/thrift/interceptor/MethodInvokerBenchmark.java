@@ -0,0 +1,102 @@
+package thrift.interceptor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.benchmarks.BenchmarkHandler;
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+
+/**
+ * Cost of calling the handler through a {@link MethodInvoker}, compared with
+ * {@link Method#invoke} and with a {@link java.lang.invoke.MethodHandle} held in a field. It
+ * lives in the package of {@link MethodInvoker}, which isn't public. Run with {@code -prof gc} to
+ * see the allocation rate.
+ *
+ * @author uday
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+
+    public enum Invoker {
+        /**
+         * {@link Method#invoke}.
+         */
+        REFLECTION,
+        /**
+         * A bound, spreading {@link java.lang.invoke.MethodHandle} in a field.
+         */
+        METHOD_HANDLE,
+        /**
+         * {@link MethodInvoker#bind(Method, Object)}.
+         */
+        SPUN
+    }
+
+    @Param
+    private Invoker invoker;
+
+    private final MultiplicationService.AsyncIface handler = new BenchmarkHandler();
+    private final ResultCallback callback = new ResultCallback();
+    private final Object[] args = { 3, 5, new Options(Long.MAX_VALUE, 7), callback };
+    private Method method;
+    private MethodInvoker methodInvoker;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        method = MultiplicationService.AsyncIface.class.getMethod("multiply", int.class,
+                int.class, Options.class, AsyncMethodCallback.class);
+        if (invoker == Invoker.METHOD_HANDLE) {
+            methodInvoker = new MethodInvoker.HandleInvoker(
+                    MethodHandles.publicLookup().unreflect(method), method, handler);
+        } else {
+            methodInvoker = MethodInvoker.bind(method, handler);
+        }
+    }
+
+    @Benchmark
+    public Object invoke() throws Throwable {
+        if (invoker == Invoker.REFLECTION) {
+            method.invoke(handler, args);
+        } else {
+            methodInvoker.invoke(args);
+        }
+        return callback.response;
+    }
+
+    private static class ResultCallback implements AsyncMethodCallback<Integer> {
+
+        private Integer response;
+
+        @Override
+        public void onComplete(Integer response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            this.response = null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package thrift.interceptor.benchmarks;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+
+/**
+ * Does what {@link thrift.interceptor.example.server.MultiplicationHandler} does, without
+ * printing every request, so the benchmarks measure the middleware rather than the console.
+ *
+ * @author uday
+ */
+public class BenchmarkHandler implements MultiplicationService.AsyncIface {
+
+    @Override
+    public void multiply(int n1, int n2, Options options,
+                         AsyncMethodCallback<Integer> resultHandler) {
+        resultHandler.onComplete(n1 * n2);
+    }
+}
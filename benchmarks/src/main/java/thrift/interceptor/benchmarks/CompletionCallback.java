@@ -0,0 +1,45 @@
+package thrift.interceptor.benchmarks;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+/**
+ * A callback reused across benchmark invocations, which lets the benchmark thread wait for a
+ * request completed on another thread without allocating.
+ *
+ * @author uday
+ */
+class CompletionCallback implements AsyncMethodCallback<Integer> {
+
+    private volatile int completions;
+    private volatile Integer response;
+
+    int getCompletions() {
+        return completions;
+    }
+
+    /**
+     * Spins until more than {@code completions} requests completed.
+     *
+     * @return the response of the last request.
+     */
+    Integer await(int completions) {
+        while (this.completions == completions) {
+            // busy wait, parking would dominate the measured time.
+        }
+        return response;
+    }
+
+    @Override
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void onComplete(Integer response) {
+        this.response = response;
+        completions++;
+    }
+
+    @Override
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void onError(Exception exception) {
+        this.response = null;
+        completions++;
+    }
+}
@@ -0,0 +1,104 @@
+package thrift.interceptor.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.dispatch.RingBufferDispatcher;
+import thrift.interceptor.dispatch.WaitStrategy;
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.MultiplicationServiceInterceptorProxy;
+import thrift.interceptor.example.multiply.Options;
+
+/**
+ * Cost of handing a request over from the calling thread to a worker thread and back, through a
+ * thread pool or a {@link RingBufferDispatcher} with each {@link WaitStrategy}, without
+ * interceptors. Run with {@code -prof gc} to see the allocation rate: the thread pool allocates a
+ * task and a queue node per request.
+ *
+ * {@code RING_BUSY_SPIN} needs a core for the worker besides the benchmark thread.
+ *
+ * @author uday
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    public enum Dispatcher {
+        /**
+         * {@link Executors#newFixedThreadPool(int)} with a single thread.
+         */
+        POOLED,
+        RING_BUSY_SPIN,
+        RING_YIELD,
+        RING_PARK
+    }
+
+    @Param
+    private Dispatcher dispatcher;
+
+    private final CompletionCallback callback = new CompletionCallback();
+    private final Options options = new Options(Long.MAX_VALUE, 7);
+    private ExecutorService pool;
+    private ThriftMiddlewareProxy<MultiplicationService.AsyncIface> middleware;
+    private MultiplicationService.AsyncIface generatedProxy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface> builder =
+                new ThriftMiddlewareProxy.Builder<>(new BenchmarkHandler());
+        switch (dispatcher) {
+            case POOLED:
+                pool = Executors.newFixedThreadPool(1);
+                builder.executor(pool);
+                break;
+            case RING_BUSY_SPIN:
+                builder.ringBuffer(1024, 1, WaitStrategy.BUSY_SPIN);
+                break;
+            case RING_YIELD:
+                builder.ringBuffer(1024, 1, WaitStrategy.YIELD);
+                break;
+            default:
+                builder.ringBuffer(1024, 1, WaitStrategy.PARK);
+                break;
+        }
+        middleware = builder.build();
+        generatedProxy = new MultiplicationServiceInterceptorProxy(middleware);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        middleware.shutdown();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public Integer handOff() throws TException {
+        int completions = callback.getCompletions();
+        generatedProxy.multiply(3, 5, options, callback);
+        return callback.await(completions);
+    }
+}
@@ -0,0 +1,43 @@
+package thrift.interceptor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+
+/**
+ * Baseline for {@link ProxyBenchmark}: the handler called directly, without the middleware.
+ *
+ * @author uday
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark {
+
+    private final MultiplicationService.AsyncIface handler = new BenchmarkHandler();
+    private final CompletionCallback callback = new CompletionCallback();
+    private final Options options = new Options(Long.MAX_VALUE, 7);
+
+    @Benchmark
+    public Integer handler() throws TException {
+        int completions = callback.getCompletions();
+        handler.multiply(3, 5, options, callback);
+        return callback.await(completions);
+    }
+}
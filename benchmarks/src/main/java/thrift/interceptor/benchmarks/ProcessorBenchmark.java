@@ -0,0 +1,150 @@
+package thrift.interceptor.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.AsyncProcessFunction;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.MultiplicationServiceInterceptorProxy;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * A request going through {@link MultiplicationService.AsyncProcessor}: decoding the message and
+ * the arguments with {@link TBinaryProtocol}, dispatching to the handler and encoding the
+ * response, on in-memory transports.
+ *
+ * It does what {@link org.apache.thrift.TBaseAsyncProcessor} does for a frame, minus the frame
+ * buffer of the nonblocking server, which needs a selector thread.
+ *
+ * @author uday
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark {
+
+    public enum Handler {
+        /**
+         * The handler called directly.
+         */
+        RAW,
+        /**
+         * The handler behind the generated interceptor proxy, with two interceptors.
+         */
+        PROXIED
+    }
+
+    @Param
+    private Handler handler;
+
+    private Map<String, AsyncProcessFunction<MultiplicationService.AsyncIface, ? extends TBase,
+            ?>> processMap;
+    private MultiplicationService.AsyncIface iface;
+    private byte[] request;
+    private final TMemoryInputTransport inputTransport = new TMemoryInputTransport();
+    private final TProtocol inputProtocol = new TBinaryProtocol(inputTransport);
+    private final TByteArrayOutputStream output = new TByteArrayOutputStream();
+    private final TProtocol outputProtocol = new TBinaryProtocol(new TIOStreamTransport(output));
+    private final ResponseWriter responseWriter = new ResponseWriter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws TException {
+        if (handler == Handler.RAW) {
+            iface = new BenchmarkHandler();
+        } else {
+            ThriftMiddlewareProxy<MultiplicationService.AsyncIface> middleware =
+                    new ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface>(
+                            new BenchmarkHandler(), DirectExecutor.INSTANCE)
+                            .addRequestCreationInterceptor(
+                                    context -> AsyncMethodCallbackListener.NO_OP_INSTANCE)
+                            .addRequestPreProcessInterceptor(
+                                    context -> AsyncMethodCallbackListener.NO_OP_INSTANCE)
+                            .build();
+            iface = new MultiplicationServiceInterceptorProxy(middleware);
+        }
+        processMap = new MultiplicationService.AsyncProcessor<>(iface).getProcessMapView();
+
+        TMemoryBuffer buffer = new TMemoryBuffer(64);
+        TProtocol protocol = new TBinaryProtocol(buffer);
+        protocol.writeMessageBegin(new TMessage("multiply", TMessageType.CALL, 1));
+        new MultiplicationService.multiply_args(3, 5, new Options(Long.MAX_VALUE, 7))
+                .write(protocol);
+        protocol.writeMessageEnd();
+        request = buffer.getArray();
+    }
+
+    @Benchmark
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int process() throws TException {
+        inputTransport.reset(request);
+        output.reset();
+        TMessage message = inputProtocol.readMessageBegin();
+        AsyncProcessFunction function = processMap.get(message.name);
+        TBase args = function.getEmptyArgsInstance();
+        args.read(inputProtocol);
+        inputProtocol.readMessageEnd();
+        responseWriter.seqid = message.seqid;
+        function.start(iface, args, responseWriter);
+        return output.len();
+    }
+
+    /**
+     * Encodes the response like the result handler of the generated processor function.
+     */
+    private class ResponseWriter implements AsyncMethodCallback<Integer> {
+
+        private int seqid;
+
+        @Override
+        public void onComplete(Integer response) {
+            MultiplicationService.multiply_result result =
+                    new MultiplicationService.multiply_result();
+            result.setSuccess(response);
+            try {
+                outputProtocol.writeMessageBegin(new TMessage("multiply", TMessageType.REPLY,
+                        seqid));
+                result.write(outputProtocol);
+                outputProtocol.writeMessageEnd();
+                outputProtocol.getTransport().flush();
+            } catch (TException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package thrift.interceptor.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.MultiplicationServiceInterceptorProxy;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * Cost of {@link ThriftMiddlewareProxy} per request, through the reflective proxy returned by
+ * {@link ThriftMiddlewareProxy#wrap(Class, java.lang.reflect.InvocationHandler)} and through
+ * the generated {@link MultiplicationServiceInterceptorProxy}. Compare with
+ * {@link HandlerBenchmark}.
+ *
+ * Half of the interceptors are request creation interceptors and half are request pre-process
+ * interceptors. With {@code listener=NO_OP} they return
+ * {@link AsyncMethodCallbackListener#NO_OP_INSTANCE}, with {@code listener=REAL} a listener that
+ * is notified when the request completes. Run with {@code -prof gc} to see the allocation rate.
+ *
+ * @author uday
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBenchmark {
+
+    public enum Listener {
+        NO_OP,
+        REAL
+    }
+
+    public enum ExecutorType {
+        /**
+         * Requests are processed on the calling thread.
+         */
+        DIRECT,
+        /**
+         * Requests are processed on a thread pool, and the calling thread waits for them.
+         */
+        POOLED
+    }
+
+    @Param({"0", "1", "5", "20"})
+    private int interceptors;
+
+    @Param
+    private Listener listener;
+
+    @Param
+    private ExecutorType executor;
+
+    private final CompletionCallback callback = new CompletionCallback();
+    private final Options options = new Options(Long.MAX_VALUE, 7);
+    private ExecutorService pool;
+    private MultiplicationService.AsyncIface reflectiveProxy;
+    private MultiplicationService.AsyncIface generatedProxy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface> builder =
+                new ThriftMiddlewareProxy.Builder<>(new BenchmarkHandler());
+        if (executor == ExecutorType.POOLED) {
+            pool = Executors.newFixedThreadPool(1);
+            builder.executor(pool);
+        } else {
+            builder.executor(DirectExecutor.INSTANCE);
+        }
+        RequestInterceptor interceptor = newInterceptor(listener);
+        for (int i = 0; i < interceptors; i++) {
+            if (i % 2 == 0) {
+                builder.addRequestCreationInterceptor(interceptor);
+            } else {
+                builder.addRequestPreProcessInterceptor(interceptor);
+            }
+        }
+        ThriftMiddlewareProxy<MultiplicationService.AsyncIface> middleware = builder.build();
+        reflectiveProxy = ThriftMiddlewareProxy.wrap(MultiplicationService.AsyncIface.class,
+                middleware);
+        generatedProxy = new MultiplicationServiceInterceptorProxy(middleware);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public Integer reflectiveProxy() throws TException {
+        int completions = callback.getCompletions();
+        reflectiveProxy.multiply(3, 5, options, callback);
+        return callback.await(completions);
+    }
+
+    @Benchmark
+    public Integer generatedProxy() throws TException {
+        int completions = callback.getCompletions();
+        generatedProxy.multiply(3, 5, options, callback);
+        return callback.await(completions);
+    }
+
+    private static RequestInterceptor newInterceptor(Listener listener) {
+        if (listener == Listener.NO_OP) {
+            return context -> AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        AsyncMethodCallbackListener<Object> realListener = new AsyncMethodCallbackListener<>(
+                new AsyncMethodCallback<Object>() {
+                    private volatile Object last;
+
+                    @Override
+                    public void onComplete(Object response) {
+                        last = response;
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        last = exception;
+                    }
+                }, DirectExecutor.INSTANCE);
+        return context -> realListener;
+    }
+}
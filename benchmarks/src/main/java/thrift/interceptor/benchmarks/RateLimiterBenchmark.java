@@ -0,0 +1,67 @@
+package thrift.interceptor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+import thrift.interceptor.limit.RateLimiter;
+
+/**
+ * {@link RateLimiter#tryAcquire(int)} and {@link RateLimiter#tryAcquire(Object)} called by 16
+ * threads at once, for a few hot keys up to many keys spread over the stripes.
+ *
+ * @author uday
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class RateLimiterBenchmark {
+
+    @Param({"1", "64", "10000"})
+    private int keys;
+
+    private RateLimiter rateLimiter;
+    private String[] keyObjects;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // high enough that permits are granted, which is the path doing the compare-and-set.
+        rateLimiter = new RateLimiter(1e12, 1000, 60, TimeUnit.SECONDS);
+        keyObjects = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyObjects[i] = "client-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int next;
+    }
+
+    @Benchmark
+    public boolean tryAcquire(ThreadState threadState) {
+        return rateLimiter.tryAcquire(threadState.next++ % keys);
+    }
+
+    @Benchmark
+    public boolean tryAcquireObject(ThreadState threadState) {
+        return rateLimiter.tryAcquire(keyObjects[threadState.next++ % keys]);
+    }
+}
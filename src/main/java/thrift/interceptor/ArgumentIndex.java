@@ -0,0 +1,135 @@
+package thrift.interceptor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+/**
+ * Names and types of the Thrift arguments of an {@code AsyncIface} method, resolved once per
+ * method so that a {@link RequestContext} can look arguments up by name or type in constant time.
+ *
+ * Argument names are taken from the {@code <method>_args} struct that the Thrift compiler
+ * generates next to the {@code AsyncIface}, falling back to the parameter names reported by
+ * reflection. The trailing {@code AsyncMethodCallback} parameter is not part of the index.
+ *
+ * @author uday
+ */
+public final class ArgumentIndex {
+
+    private static final String ARGS_STRUCT_SUFFIX = "_args";
+    private static final String FIELDS_ENUM = "_Fields";
+
+    private final String[] names;
+    private final Class<?>[] types;
+    private final Map<String, Integer> indexByName;
+    private final Map<Class<?>, Integer> indexByType;
+
+    private ArgumentIndex(String[] names, Class<?>[] types) {
+        this.names = names;
+        this.types = types;
+        Map<String, Integer> indexByName = new HashMap<>();
+        Map<Class<?>, Integer> indexByType = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            indexByName.put(names[i], i);
+            indexByType.putIfAbsent(types[i], i);
+        }
+        this.indexByName = Collections.unmodifiableMap(indexByName);
+        this.indexByType = Collections.unmodifiableMap(indexByType);
+    }
+
+    /**
+     * Creates the index of an {@code AsyncIface} or {@code Iface} method.
+     */
+    public static ArgumentIndex of(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        int count = parameterTypes.length;
+        // thrift puts the AsyncMethodCallback argument at the end of each AsyncIface method.
+        if (count > 0 && AsyncMethodCallback.class.isAssignableFrom(parameterTypes[count - 1])) {
+            count--;
+        }
+        Class<?>[] types = new Class<?>[count];
+        System.arraycopy(parameterTypes, 0, types, 0, count);
+        String[] names = thriftArgumentNames(method, count);
+        if (names == null) {
+            Parameter[] parameters = method.getParameters();
+            names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = parameters[i].getName();
+            }
+        }
+        return new ArgumentIndex(names, types);
+    }
+
+    /**
+     * @return number of Thrift arguments, excluding the result callback.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public Class<?> getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return position of the argument with the given Thrift field name, or -1.
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return position of the first argument of the given type, or -1. Exact types are looked up
+     *         in constant time, super types are searched for.
+     */
+    public int indexOf(Class<?> type) {
+        Integer index = indexByType.get(type);
+        if (index != null) {
+            return index;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (type.isAssignableFrom(types[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] thriftArgumentNames(Method method, int count) {
+        Class<?> service = method.getDeclaringClass().getEnclosingClass();
+        if (service == null) {
+            return null;
+        }
+        for (Class<?> nested : service.getClasses()) {
+            if (!nested.getSimpleName().equals(method.getName() + ARGS_STRUCT_SUFFIX)) {
+                continue;
+            }
+            for (Class<?> fieldsEnum : nested.getClasses()) {
+                if (!fieldsEnum.getSimpleName().equals(FIELDS_ENUM)
+                        || !TFieldIdEnum.class.isAssignableFrom(fieldsEnum)) {
+                    continue;
+                }
+                Object[] fields = fieldsEnum.getEnumConstants();
+                if (fields == null || fields.length != count) {
+                    return null;
+                }
+                String[] names = new String[count];
+                for (int i = 0; i < count; i++) {
+                    names[i] = ((TFieldIdEnum) fields[i]).getFieldName();
+                }
+                return names;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package thrift.interceptor;
+
+import java.lang.reflect.Method;
+
+import org.apache.thrift.TException;
+
+/**
+ * A {@link RequestInterceptor} that only cares about one argument of a Thrift request, selected by
+ * its type.
+ *
+ * The interceptor applies only to methods that declare an argument of that type. When the
+ * interceptor chain of a method is built, the position of the argument is resolved once, so the
+ * interceptor receives it directly instead of scanning the arguments on each request.
+ *
+ * @author uday
+ */
+public abstract class ArgumentInterceptor<A> implements RequestInterceptor {
+
+    private final Class<A> argumentType;
+
+    protected ArgumentInterceptor(Class<A> argumentType) {
+        this.argumentType = argumentType;
+    }
+
+    public Class<A> getArgumentType() {
+        return argumentType;
+    }
+
+    @Override
+    public boolean appliesTo(Method method) {
+        return ArgumentIndex.of(method).indexOf(argumentType) >= 0;
+    }
+
+    /**
+     * Intercepts a Thrift request without a precomputed argument position.
+     */
+    @Override
+    public final AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        int index = context.getArgumentIndex().indexOf(argumentType);
+        if (index < 0) {
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        return intercept(context, argumentType.cast(context.getArgument(index)));
+    }
+
+    /**
+     * Intercept a Thrift request.
+     *
+     * @param context
+     *         the request.
+     * @param argument
+     *         the argument of {@link #getArgumentType()}, possibly null if the client didn't set
+     *         it.
+     *
+     * @return a non-null {@link AsyncMethodCallbackListener<Object>}, see
+     *         {@link RequestInterceptor#intercept(RequestContext)}.
+     */
+    public abstract AsyncMethodCallbackListener<Object> intercept(RequestContext context,
+                                                                  A argument)
+            throws TException;
+}
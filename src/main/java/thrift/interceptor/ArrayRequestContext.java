@@ -0,0 +1,37 @@
+package thrift.interceptor;
+
+/**
+ * A {@link RequestContext} backed by the argument array received by
+ * {@link ThriftMiddlewareProxy#invoke(Object, java.lang.reflect.Method, Object[])} or
+ * {@link ThriftClientProxy#invoke(Object, java.lang.reflect.Method, Object[])}.
+ *
+ * @author uday
+ */
+final class ArrayRequestContext extends RequestContext {
+
+    private final Object[] args;
+
+    ArrayRequestContext(InterceptorChain interceptorChain, Object[] args,
+                        ListenableAsyncMethodCallback<Object> resultCallback) {
+        super(interceptorChain, resultCallback);
+        this.args = args;
+    }
+
+    @Override
+    public Object getArgument(int index) {
+        if (index < 0 || index >= getArgumentIndex().size()) {
+            throw argumentIndexOutOfBounds(index);
+        }
+        return args[index];
+    }
+
+    @Override
+    public Object[] getArguments() {
+        return args;
+    }
+
+    @Override
+    protected void invokeHandler() throws Throwable {
+        getInterceptorChain().getMethodInvoker().invoke(args);
+    }
+}
@@ -0,0 +1,27 @@
+package thrift.interceptor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes a batch of requests of one method at once, e.g. with a single query to a database,
+ * see {@link ThriftMiddlewareProxy.Builder#batch(String, BatchHandler, int, long, TimeUnit)}.
+ *
+ * @author uday
+ */
+@FunctionalInterface
+public interface BatchHandler {
+
+    /**
+     * Processes the requests, on the executor of the {@link ThriftMiddlewareProxy}. Each request
+     * has to be completed through its {@link RequestContext#getResultCallback()}, now or later;
+     * its arguments are read from the {@link RequestContext}. The next batch can start once this
+     * method returns.
+     *
+     * @param requests
+     *         the requests, in arrival order, that passed the request pre-process interceptors.
+     * @throws Exception
+     *         to fail the requests that aren't completed yet.
+     */
+    void handle(List<RequestContext> requests) throws Exception;
+}
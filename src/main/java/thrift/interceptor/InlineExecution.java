@@ -0,0 +1,95 @@
+package thrift.interceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+import thrift.interceptor.metrics.HistogramSnapshot;
+import thrift.interceptor.metrics.LatencyHistogram;
+
+/**
+ * Decides whether the requests of a method are processed inline, on the thread that received
+ * them, or on the executor.
+ *
+ * A fixed policy always processes them inline. An adaptive policy measures how long processing
+ * a request occupies its thread, from the request pre-process interceptors until the handler
+ * returns, and evaluates the p99 of that service time every {@link #WINDOW_NANOS}: the method
+ * is offloaded to the executor once the p99 exceeds {@code maxServiceNanos}, and brought back
+ * inline once it falls under half of it, so a method close to the threshold doesn't flip at
+ * every window.
+ *
+ * A window with fewer than {@link #MIN_WINDOW_SAMPLES} samples carries them over to the next
+ * one, so a method too slow to be called that often in a window is still evaluated. An inline
+ * method is offloaded without waiting for the minimum once enough of its samples exceed
+ * {@code maxServiceNanos} that the p99 would exceed it whatever the samples still missing.
+ *
+ * @author uday
+ */
+final class InlineExecution {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // fewer samples in a window don't tell the p99 apart from the max.
+    private static final long MIN_WINDOW_SAMPLES = 100;
+    private static final double PERCENTILE = 99;
+    // samples above maxServiceNanos that put the p99 of MIN_WINDOW_SAMPLES samples above it.
+    private static final long MIN_SLOW_SAMPLES =
+            MIN_WINDOW_SAMPLES - (long) Math.ceil(PERCENTILE / 100 * MIN_WINDOW_SAMPLES) + 1;
+
+    private final long maxServiceNanos;
+    private final LatencyHistogram serviceTimes;
+    private final AtomicLong windowEndNanos;
+    private volatile boolean inline = true;
+
+    /**
+     * @param maxServiceNanos
+     *         p99 service time above which the method is offloaded, or {@link Long#MAX_VALUE}
+     *         to always process it inline.
+     */
+    InlineExecution(long maxServiceNanos) {
+        this.maxServiceNanos = maxServiceNanos;
+        if (isAdaptive()) {
+            this.serviceTimes = new LatencyHistogram();
+            this.windowEndNanos = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+        } else {
+            this.serviceTimes = null;
+            this.windowEndNanos = null;
+        }
+    }
+
+    boolean isAdaptive() {
+        return maxServiceNanos != Long.MAX_VALUE;
+    }
+
+    boolean isInline() {
+        return inline;
+    }
+
+    /**
+     * Records the service time of a request of an adaptive method, inline or not.
+     *
+     * @param now
+     *         {@link System#nanoTime()} when the handler returned.
+     */
+    void record(long serviceNanos, long now) {
+        serviceTimes.record(serviceNanos);
+        long windowEnd = windowEndNanos.get();
+        if (now - windowEnd >= 0 && windowEndNanos.compareAndSet(windowEnd, now + WINDOW_NANOS)) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        HistogramSnapshot snapshot = serviceTimes.snapshot();
+        if (snapshot.getCount() < MIN_WINDOW_SAMPLES) {
+            if (inline && snapshot.getCountAbove(maxServiceNanos) >= MIN_SLOW_SAMPLES) {
+                serviceTimes.snapshotAndReset();
+                inline = false;
+            }
+            // otherwise the samples are kept for the next window.
+            return;
+        }
+        snapshot = serviceTimes.snapshotAndReset();
+        long p99 = snapshot.getValueAtPercentile(PERCENTILE);
+        inline = inline ? p99 <= maxServiceNanos : p99 <= maxServiceNanos / 2;
+    }
+}
@@ -0,0 +1,140 @@
+package thrift.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+
+/**
+ * The interceptors of a single {@code AsyncIface} method, resolved once when a
+ * {@link ThriftMiddlewareProxy} is built.
+ *
+ * The chain only contains the interceptors that {@link RequestInterceptor#appliesTo(Method)
+ * apply} to the method, and {@link ArgumentInterceptor}s are bound to the position of their
+ * argument, so each request pays only for the interceptors relevant to it.
+ *
+ * @author uday
+ */
+public final class InterceptorChain {
+
+    private final Method method;
+    private final ArgumentIndex argumentIndex;
+    private final MethodInvoker methodInvoker;
+    private final RequestInterceptor[] requestCreationInterceptors;
+    private final RequestInterceptor[] requestPreProcessInterceptors;
+
+    /**
+     * @throws IllegalArgumentException
+     *         if an {@link ArgumentInterceptor} applies to the method, but the method has no
+     *         argument of its type.
+     */
+    InterceptorChain(Method method, MethodInvoker methodInvoker,
+                     List<RequestInterceptor> requestCreationInterceptors,
+                     List<RequestInterceptor> requestPreProcessInterceptors) {
+        this.method = method;
+        this.argumentIndex = ArgumentIndex.of(method);
+        this.methodInvoker = methodInvoker;
+        this.requestCreationInterceptors = bind(requestCreationInterceptors);
+        this.requestPreProcessInterceptors = bind(requestPreProcessInterceptors);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ArgumentIndex getArgumentIndex() {
+        return argumentIndex;
+    }
+
+    /**
+     * @return true if any interceptor applies to the method.
+     */
+    public boolean isIntercepted() {
+        return requestCreationInterceptors.length > 0
+                || requestPreProcessInterceptors.length > 0;
+    }
+
+    MethodInvoker getMethodInvoker() {
+        return methodInvoker;
+    }
+
+    /**
+     * @return false if an interceptor answered the request (see {@link ShortCircuit}) or took
+     *         it over (see {@link RequestContext#takeOver()}).
+     */
+    boolean processRequestCreationInterceptors(RequestContext context) throws TException {
+        return processRequestCreationInterceptors(context, 0);
+    }
+
+    /**
+     * @param first
+     *         index of the first interceptor to run, that of the interceptor that took the
+     *         request over when it is resumed (see {@link RequestContext#resume()}).
+     *
+     * @return false if an interceptor answered the request (see {@link ShortCircuit}) or took
+     *         it over (see {@link RequestContext#takeOver()}).
+     */
+    boolean processRequestCreationInterceptors(RequestContext context, int first)
+            throws TException {
+        return process(requestCreationInterceptors, first, context, true);
+    }
+
+    /**
+     * @return false if an interceptor answered the request (see {@link ShortCircuit}) or took
+     *         it over (see {@link RequestContext#takeOver()}).
+     */
+    boolean processRequestPreProcessInterceptors(RequestContext context) throws TException {
+        return process(requestPreProcessInterceptors, 0, context, false);
+    }
+
+    /**
+     * @param resumable
+     *         whether a request taken over by one of the interceptors can be resumed from it.
+     */
+    private static boolean process(RequestInterceptor[] interceptors, int first,
+                                   RequestContext context, boolean resumable)
+            throws TException {
+        ListenableAsyncMethodCallback<Object> resultCallback = context.getResultCallback();
+        for (int i = first; i < interceptors.length; i++) {
+            AsyncMethodCallbackListener<Object> listener = interceptors[i].intercept(context);
+            if (listener instanceof ShortCircuit) {
+                ((ShortCircuit) listener).complete(resultCallback);
+                return false;
+            }
+            resultCallback.addListener(listener);
+            if (context.isTakenOver()) {
+                context.markTakenOverBy(resumable ? i : -1);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RequestInterceptor[] bind(List<RequestInterceptor> interceptors) {
+        List<RequestInterceptor> bound = new ArrayList<>(interceptors.size());
+        for (RequestInterceptor interceptor : interceptors) {
+            if (!interceptor.appliesTo(method)) {
+                continue;
+            }
+            if (interceptor instanceof ArgumentInterceptor) {
+                bound.add(bindArgument((ArgumentInterceptor<?>) interceptor));
+            } else {
+                bound.add(interceptor);
+            }
+        }
+        return bound.toArray(new RequestInterceptor[0]);
+    }
+
+    private <A> RequestInterceptor bindArgument(ArgumentInterceptor<A> interceptor) {
+        Class<A> argumentType = interceptor.getArgumentType();
+        int index = argumentIndex.indexOf(argumentType);
+        if (index < 0) {
+            // appliesTo was overridden to accept a method without the argument.
+            throw new IllegalArgumentException("No argument of type " + argumentType.getName()
+                    + " in " + method + " for " + interceptor);
+        }
+        return context -> interceptor.intercept(context,
+                argumentType.cast(context.getArgument(index)));
+    }
+}
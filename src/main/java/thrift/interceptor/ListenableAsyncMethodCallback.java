@@ -1,57 +1,208 @@
 package thrift.interceptor;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.apache.thrift.async.AsyncMethodCallback;
 
+
+import thrift.interceptor.utils.DirectExecutor;
+
 /**
  * An implementation of {@link AsyncMethodCallback<T>} that allows chaining of
  * other implementations of {@link AsyncMethodCallback<T>}s.
  *
+ * Listeners are added on the selector thread and on worker threads while the handler may complete
+ * the request on any thread, so the callback behaves like a promise without taking locks:
+ * <ul>
+ *     <li>only the first call to {@link #onComplete(Object)} or {@link #onError(Exception)} has
+ *     an effect,</li>
+ *     <li>a listener added after completion is notified immediately,</li>
+ *     <li>listeners are kept in a stack updated with compare-and-set.</li>
+ * </ul>
+ *
+ * The callback is on the path of every request, so it avoids allocating: the result callback
+ * supplied by Thrift is kept in a field, a single listener is stored without a stack node,
+ * {@link AsyncMethodCallbackListener#NO_OP_INSTANCE} is never registered, and listeners on the
+ * {@link DirectExecutor} are called without creating a task.
+ *
  * @author uday
  */
 public class ListenableAsyncMethodCallback<T>
         implements AsyncMethodCallback<T> {
 
-    private final List<AsyncMethodCallbackListener<T>> listeners
-            = new ArrayList<>();
+    /**
+     * Value of {@link #listeners} once the callback is completed.
+     */
+    private static final Object COMPLETED = new Object();
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ListenableAsyncMethodCallback, Object>
+            LISTENERS = AtomicReferenceFieldUpdater.newUpdater(
+            ListenableAsyncMethodCallback.class, Object.class, "listeners");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<ListenableAsyncMethodCallback> DONE =
+            AtomicIntegerFieldUpdater.newUpdater(ListenableAsyncMethodCallback.class, "done");
+
+    private final AsyncMethodCallback<T> resultCallback;
+
+    /**
+     * null, a single {@link AsyncMethodCallbackListener}, a {@link Node} or {@link #COMPLETED}.
+     */
+    private volatile Object listeners;
+    private volatile int done;
+
+    // published by the write of COMPLETED to listeners.
+    private T response;
+    private Exception exception;
+    private boolean failed;
+
+    public ListenableAsyncMethodCallback() {
+        this(null);
+    }
+
+    /**
+     * @param resultCallback
+     *         the callback that sends the result back to the client, notified before all the
+     *         listeners. May be null.
+     */
+    public ListenableAsyncMethodCallback(AsyncMethodCallback<T> resultCallback) {
+        this.resultCallback = resultCallback;
+    }
 
     /**
-     * Adds a listener to completion/error events.
+     * Adds a listener to completion/error events. If the callback is already completed, the
+     * listener is notified right away.
      *
      * @param listener
-     *         a {@link AsyncMethodCallback<T>} that wants to be notified about
-     *         the events.
-     * @param executor
-     *         an {@link Executor} on which the listener wants to be notified
-     *         on.
+     *         a {@link AsyncMethodCallbackListener<T>} that wants to be notified about
+     *         the events, on its executor.
+     *         {@link AsyncMethodCallbackListener#NO_OP_INSTANCE} is ignored.
      */
     public void addListener(AsyncMethodCallbackListener<T> listener) {
-        listeners.add(listener);
+        if (listener == (Object) AsyncMethodCallbackListener.NO_OP_INSTANCE) {
+            return;
+        }
+        Node node = null;
+        for (;;) {
+            Object current = listeners;
+            if (current == COMPLETED) {
+                notifyListener(listener);
+                return;
+            }
+            Object update;
+            if (current == null) {
+                update = listener;
+            } else {
+                if (node == null) {
+                    node = new Node(listener);
+                }
+                node.next = current;
+                update = node;
+            }
+            if (LISTENERS.compareAndSet(this, current, update)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true once {@link #onComplete(Object)} or {@link #onError(Exception)} was called.
+     */
+    public boolean isDone() {
+        return done != 0;
     }
 
     @Override
     public void onComplete(T response) {
-        listeners.forEach((l) -> {
+        if (!DONE.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        this.response = response;
+        Object completed = LISTENERS.getAndSet(this, COMPLETED);
+        if (resultCallback != null) {
             try {
-                l.getExecutor().execute(()
-                        -> l.getAsyncMethodCallback().onComplete(response));
+                resultCallback.onComplete(response);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        });
+        }
+        notifyListeners(completed);
     }
 
     @Override
     public void onError(Exception exception) {
-        listeners.forEach((l) -> {
+        if (!DONE.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        this.exception = exception;
+        this.failed = true;
+        Object completed = LISTENERS.getAndSet(this, COMPLETED);
+        if (resultCallback != null) {
             try {
-                l.getExecutor().execute(()
-                        -> l.getAsyncMethodCallback().onError(exception));
+                resultCallback.onError(exception);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        });
+        }
+        notifyListeners(completed);
+    }
+
+    /**
+     * Notifies the listeners taken from {@link #listeners}, in the order they were added.
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyListeners(Object listeners) {
+        // the stack has the latest listener on top and the first one, without a node, at the
+        // bottom: reverse the nodes in place rather than recursing, as a request can have
+        // thousands of listeners, e.g. the requests coalesced with it.
+        Node reversed = null;
+        while (listeners instanceof Node) {
+            Node node = (Node) listeners;
+            listeners = node.next;
+            node.next = reversed;
+            reversed = node;
+        }
+        if (listeners != null) {
+            notifyListener((AsyncMethodCallbackListener<T>) listeners);
+        }
+        for (Node node = reversed; node != null; node = (Node) node.next) {
+            notifyListener((AsyncMethodCallbackListener<T>) node.listener);
+        }
+    }
+
+    private void notifyListener(AsyncMethodCallbackListener<T> listener) {
+        AsyncMethodCallback<T> callback = listener.getAsyncMethodCallback();
+        Executor executor = listener.getExecutor();
+        Exception exception = this.exception;
+        T response = this.response;
+        try {
+            if (failed) {
+                if (executor == DirectExecutor.INSTANCE) {
+                    callback.onError(exception);
+                } else {
+                    executor.execute(() -> callback.onError(exception));
+                }
+            } else {
+                if (executor == DirectExecutor.INSTANCE) {
+                    callback.onComplete(response);
+                } else {
+                    executor.execute(() -> callback.onComplete(response));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Node {
+
+        private final AsyncMethodCallbackListener<?> listener;
+        private Object next;
+
+        Node(AsyncMethodCallbackListener<?> listener) {
+            this.listener = listener;
+        }
     }
 }
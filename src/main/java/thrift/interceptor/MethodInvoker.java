@@ -0,0 +1,275 @@
+package thrift.interceptor;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a single method of a Thrift interface on a fixed target.
+ *
+ * For a method with up to {@link #MAX_SPUN_ARITY} parameters, {@link LambdaMetafactory} spins a
+ * class per method that calls it directly on the target, as a lambda would: invoking it is an
+ * interface call the JIT inlines like any other, without the access checks and the
+ * {@link java.lang.reflect.InvocationTargetException} wrapping done by {@link Method#invoke}. A
+ * {@link MethodHandle} held in a field isn't a constant to the JIT, so calling it goes through
+ * a generic invoker; it is only used for methods with more parameters, or whose types aren't
+ * accessible from this class.
+ *
+ * @author uday
+ */
+interface MethodInvoker {
+
+    int MAX_SPUN_ARITY = 6;
+
+    /**
+     * Invokes the method with the given arguments. Exceptions thrown by the target are propagated
+     * as they are.
+     *
+     * @return the result of the method, boxed if it is a primitive, or null for void methods.
+     */
+    Object invoke(Object[] args) throws Throwable;
+
+    /**
+     * Creates an invoker that calls {@code method} on {@code target}.
+     *
+     * @param method
+     *         an interface method implemented by target.
+     * @param target
+     *         the object on which the method would be invoked.
+     */
+    static MethodInvoker bind(Method method, Object target) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // the interface is not public, fall back to a suppressed access check.
+            method.setAccessible(true);
+            try {
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException inaccessible) {
+                throw new IllegalArgumentException("Cannot access " + method, inaccessible);
+            }
+            return new HandleInvoker(handle, method, target);
+        }
+        MethodInvoker invoker = spin(handle, method, target);
+        return invoker != null ? invoker : new HandleInvoker(handle, method, target);
+    }
+
+    /**
+     * @return an invoker implemented by a class spun for method, or null if it can't be spun.
+     */
+    static MethodInvoker spin(MethodHandle handle, Method method, Object target) {
+        int arity = method.getParameterCount();
+        if (arity > MAX_SPUN_ARITY || !isAccessible(method.getDeclaringClass())
+                || !isAccessible(method.getReturnType())) {
+            return null;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isAccessible(parameterType)) {
+                return null;
+            }
+        }
+        boolean isVoid = method.getReturnType() == void.class;
+        Class<?> invokerType = isVoid ? VOID_INVOKERS[arity] : INVOKERS[arity];
+        MethodType samType = MethodType.genericMethodType(arity);
+        if (isVoid) {
+            samType = samType.changeReturnType(void.class);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(MethodHandles.lookup(), "call",
+                    MethodType.methodType(invokerType, method.getDeclaringClass()), samType,
+                    handle, handle.type().dropParameterTypes(0, 1).wrap()
+                            .changeReturnType(isVoid ? void.class : Object.class));
+            return (MethodInvoker) site.getTarget().invoke(target);
+        } catch (LambdaConversionException e) {
+            return null;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Cannot bind " + method, t);
+        }
+    }
+
+    /**
+     * @return true if the class spun for a method can refer to type: it is public and loaded by
+     *         the class loader of this class or one of its parents.
+     */
+    static boolean isAccessible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(type.getName(), false, MethodInvoker.class.getClassLoader())
+                    == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    Class<?>[] INVOKERS = {
+            Invoker0.class, Invoker1.class, Invoker2.class, Invoker3.class, Invoker4.class,
+            Invoker5.class, Invoker6.class };
+
+    Class<?>[] VOID_INVOKERS = {
+            VoidInvoker0.class, VoidInvoker1.class, VoidInvoker2.class, VoidInvoker3.class,
+            VoidInvoker4.class, VoidInvoker5.class, VoidInvoker6.class };
+
+    /**
+     * Calls the method through a {@link MethodHandle} bound to the target that spreads the
+     * argument array.
+     */
+    final class HandleInvoker implements MethodInvoker {
+
+        private static final MethodType INVOKER_TYPE =
+                MethodType.methodType(Object.class, Object[].class);
+
+        private final MethodHandle handle;
+
+        HandleInvoker(MethodHandle handle, Method method, Object target) {
+            this.handle = handle.bindTo(target)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(INVOKER_TYPE);
+        }
+
+        @Override
+        public Object invoke(Object[] args) throws Throwable {
+            return (Object) handle.invokeExact(args);
+        }
+    }
+
+    // implemented by the classes spun for methods returning a value, per number of parameters.
+
+    interface Invoker0 extends MethodInvoker {
+        Object call() throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call();
+        }
+    }
+
+    interface Invoker1 extends MethodInvoker {
+        Object call(Object a0) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0]);
+        }
+    }
+
+    interface Invoker2 extends MethodInvoker {
+        Object call(Object a0, Object a1) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0], args[1]);
+        }
+    }
+
+    interface Invoker3 extends MethodInvoker {
+        Object call(Object a0, Object a1, Object a2) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0], args[1], args[2]);
+        }
+    }
+
+    interface Invoker4 extends MethodInvoker {
+        Object call(Object a0, Object a1, Object a2, Object a3) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0], args[1], args[2], args[3]);
+        }
+    }
+
+    interface Invoker5 extends MethodInvoker {
+        Object call(Object a0, Object a1, Object a2, Object a3, Object a4) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0], args[1], args[2], args[3], args[4]);
+        }
+    }
+
+    interface Invoker6 extends MethodInvoker {
+        Object call(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5)
+                throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            return call(args[0], args[1], args[2], args[3], args[4], args[5]);
+        }
+    }
+
+    // implemented by the classes spun for void methods, per number of parameters.
+
+    interface VoidInvoker0 extends MethodInvoker {
+        void call() throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call();
+            return null;
+        }
+    }
+
+    interface VoidInvoker1 extends MethodInvoker {
+        void call(Object a0) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0]);
+            return null;
+        }
+    }
+
+    interface VoidInvoker2 extends MethodInvoker {
+        void call(Object a0, Object a1) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0], args[1]);
+            return null;
+        }
+    }
+
+    interface VoidInvoker3 extends MethodInvoker {
+        void call(Object a0, Object a1, Object a2) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0], args[1], args[2]);
+            return null;
+        }
+    }
+
+    interface VoidInvoker4 extends MethodInvoker {
+        void call(Object a0, Object a1, Object a2, Object a3) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0], args[1], args[2], args[3]);
+            return null;
+        }
+    }
+
+    interface VoidInvoker5 extends MethodInvoker {
+        void call(Object a0, Object a1, Object a2, Object a3, Object a4) throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0], args[1], args[2], args[3], args[4]);
+            return null;
+        }
+    }
+
+    interface VoidInvoker6 extends MethodInvoker {
+        void call(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5)
+                throws Throwable;
+
+        default Object invoke(Object[] args) throws Throwable {
+            call(args[0], args[1], args[2], args[3], args[4], args[5]);
+            return null;
+        }
+    }
+}
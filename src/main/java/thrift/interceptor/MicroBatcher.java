@@ -0,0 +1,174 @@
+package thrift.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.thrift.TException;
+
+
+import thrift.interceptor.scheduling.OverloadException;
+
+/**
+ * Accumulates the requests of a method into batches for a {@link BatchHandler}.
+ *
+ * At most {@code maxConcurrentBatches} batches are processed at a time. A request arriving while
+ * a batch can start is sent right away, alone if need be, so light traffic doesn't wait for a
+ * batch to fill. Requests arriving while the batches are busy wait for one of them to finish and
+ * are then sent together: the batch size follows the load and the time the handler takes. A
+ * request waits at most {@code maxLinger}, and at most {@code maxBatchSize} requests wait; past
+ * either, the waiting requests are sent as an extra batch.
+ *
+ * @author uday
+ */
+final class MicroBatcher {
+
+    private final BatchHandler handler;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final int maxConcurrentBatches;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final Runnable lingerExpired = this::lingerExpired;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by lock.
+    private List<RequestContext> pending;
+    private int runningBatches;
+    private ScheduledFuture<?> lingerTimeout;
+
+    MicroBatcher(BatchHandler handler, int maxBatchSize, long maxLingerNanos,
+                 int maxConcurrentBatches, Executor executor, ScheduledExecutorService timer) {
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = maxLingerNanos;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.executor = executor;
+        this.timer = timer;
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Adds a request that passed the request creation interceptors to the next batch.
+     */
+    void add(RequestContext context) {
+        List<RequestContext> batch = null;
+        lock.lock();
+        try {
+            pending.add(context);
+            if (runningBatches < maxConcurrentBatches || pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (lingerTimeout == null) {
+                lingerTimeout = timer.schedule(lingerExpired, maxLingerNanos,
+                        TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+    }
+
+    private void lingerExpired() {
+        List<RequestContext> batch = null;
+        lock.lock();
+        try {
+            lingerTimeout = null;
+            if (!pending.isEmpty()) {
+                batch = takePending();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+    }
+
+    private void batchCompleted() {
+        List<RequestContext> batch = null;
+        lock.lock();
+        try {
+            runningBatches--;
+            if (!pending.isEmpty()) {
+                batch = takePending();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+    }
+
+    /**
+     * Takes the pending requests as a batch about to run.
+     */
+    private List<RequestContext> takePending() {
+        List<RequestContext> batch = pending;
+        pending = new ArrayList<>(Math.min(maxBatchSize, 2 * batch.size()));
+        runningBatches++;
+        if (lingerTimeout != null) {
+            lingerTimeout.cancel(false);
+            lingerTimeout = null;
+        }
+        return batch;
+    }
+
+    private void execute(List<RequestContext> batch) {
+        try {
+            executor.execute(() -> process(batch));
+        } catch (RejectedExecutionException e) {
+            for (RequestContext context : batch) {
+                context.getResultCallback()
+                        .onError(OverloadException.Reason.EXECUTOR_REJECTED.getException());
+            }
+            batchCompleted();
+        }
+    }
+
+    /**
+     * Runs the request pre-process interceptors of every request of a batch and the handler, on
+     * the executor.
+     */
+    private void process(List<RequestContext> batch) {
+        List<RequestContext> admitted = new ArrayList<>(batch.size());
+        for (RequestContext context : batch) {
+            context.markDequeued();
+            try {
+                if (context.getInterceptorChain()
+                        .processRequestPreProcessInterceptors(context)) {
+                    admitted.add(context);
+                }
+            } catch (Exception e) {
+                context.getResultCallback().onError(e);
+            }
+        }
+        try {
+            if (!admitted.isEmpty()) {
+                for (RequestContext context : admitted) {
+                    context.markHandlerStarted();
+                }
+                handler.handle(admitted);
+            }
+        } catch (Exception e) {
+            fail(admitted, e);
+        } catch (Throwable t) {
+            fail(admitted, new TException(t));
+        } finally {
+            batchCompleted();
+        }
+    }
+
+    private static void fail(List<RequestContext> batch, Exception exception) {
+        for (RequestContext context : batch) {
+            context.getResultCallback().onError(exception);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package thrift.interceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * A single Thrift request seen by the {@link RequestInterceptor}s.
+ *
+ * Arguments can be read by position, by Thrift field name or by type. Lookups go through the
+ * {@link ArgumentIndex} built once per method, so they don't depend on the number of arguments.
+ * Primitive arguments can be read with the typed getters (e.g. {@link #getInt(int)}); the
+ * contexts created by generated interceptor proxies (see
+ * {@link thrift.interceptor.codegen.GenerateInterceptorProxy}) keep the primitives unboxed.
+ *
+ * @author uday
+ */
+public abstract class RequestContext {
+
+    private final InterceptorChain interceptorChain;
+    private final ListenableAsyncMethodCallback<Object> resultCallback;
+
+    // System.nanoTime() when the request entered the middleware, when it was handed to the
+    // executor, when it started there and when the handler was called.
+    private long createdNanos;
+    private long enqueuedNanos;
+    private long dequeuedNanos;
+    private long handlerStartedNanos;
+    private boolean takenOver;
+    // the middleware dispatching the request and the index of the request creation interceptor
+    // that took it over, or -1, to resume it.
+    private ThriftMiddlewareProxy<?> middleware;
+    private int takenOverBy = -1;
+
+    protected RequestContext(InterceptorChain interceptorChain,
+                             ListenableAsyncMethodCallback<Object> resultCallback) {
+        this.interceptorChain = interceptorChain;
+        this.resultCallback = resultCallback;
+    }
+
+    /**
+     * @return Method that would be invoked to process actual thrift request.
+     */
+    public Method getMethod() {
+        return interceptorChain.getMethod();
+    }
+
+    public ArgumentIndex getArgumentIndex() {
+        return interceptorChain.getArgumentIndex();
+    }
+
+    /**
+     * @return the callback that completes the request. Interceptors can add listeners to it.
+     */
+    public ListenableAsyncMethodCallback<Object> getResultCallback() {
+        return resultCallback;
+    }
+
+    /**
+     * @param index
+     *         position of the argument, between 0 and {@link ArgumentIndex#size()}.
+     *
+     * @return the argument, boxed if it is a primitive.
+     */
+    public abstract Object getArgument(int index);
+
+    /**
+     * @return the argument with the given Thrift field name.
+     * @throws IllegalArgumentException
+     *         if the method has no such argument.
+     */
+    public Object getArgument(String name) {
+        return getArgument(indexOf(name));
+    }
+
+    /**
+     * @return the first argument of the given type, or null if the method has no such argument.
+     */
+    public <A> A getArgument(Class<A> type) {
+        int index = getArgumentIndex().indexOf(type);
+        return index < 0 ? null : type.cast(getArgument(index));
+    }
+
+    public boolean getBoolean(int index) {
+        return (Boolean) getArgument(index);
+    }
+
+    public boolean getBoolean(String name) {
+        return getBoolean(indexOf(name));
+    }
+
+    public byte getByte(int index) {
+        return (Byte) getArgument(index);
+    }
+
+    public byte getByte(String name) {
+        return getByte(indexOf(name));
+    }
+
+    public short getShort(int index) {
+        return (Short) getArgument(index);
+    }
+
+    public short getShort(String name) {
+        return getShort(indexOf(name));
+    }
+
+    public int getInt(int index) {
+        return (Integer) getArgument(index);
+    }
+
+    public int getInt(String name) {
+        return getInt(indexOf(name));
+    }
+
+    public long getLong(int index) {
+        return (Long) getArgument(index);
+    }
+
+    public long getLong(String name) {
+        return getLong(indexOf(name));
+    }
+
+    public double getDouble(int index) {
+        return (Double) getArgument(index);
+    }
+
+    public double getDouble(String name) {
+        return getDouble(indexOf(name));
+    }
+
+    /**
+     * @return the arguments followed by the result callback, as they'd be passed to the handler.
+     */
+    public Object[] getArguments() {
+        int size = getArgumentIndex().size();
+        Object[] args = new Object[size + 1];
+        for (int i = 0; i < size; i++) {
+            args[i] = getArgument(i);
+        }
+        args[size] = resultCallback;
+        return args;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the request entered the middleware, before the
+     *         request creation interceptors ran.
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the request was queued for the executor, after
+     *         the request creation interceptors ran.
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the executor started processing the request, or
+     *         0 if it is still queued.
+     */
+    public long getDequeuedNanos() {
+        return dequeuedNanos;
+    }
+
+    /**
+     * @return how long the request waited between being queued and being picked up by the
+     *         executor, or how long it has been waiting so far if it is still queued.
+     */
+    public long getQueueSojournNanos() {
+        long dequeuedNanos = this.dequeuedNanos;
+        return (dequeuedNanos != 0 ? dequeuedNanos : System.nanoTime()) - enqueuedNanos;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the handler was called, after the request
+     *         pre-process interceptors ran, or 0 if it wasn't called.
+     */
+    public long getHandlerStartedNanos() {
+        return handlerStartedNanos;
+    }
+
+    /**
+     * Takes over the completion of this request: the interceptor calling it completes
+     * {@link #getResultCallback()} itself, later, e.g. once an identical request in flight
+     * completes. An interceptor answering right away returns a {@link ShortCircuit} instead. The
+     * interceptors after it and the handler are skipped; the listeners already added are
+     * notified when the request is completed.
+     */
+    public void takeOver() {
+        takenOver = true;
+    }
+
+    /**
+     * @return true if an interceptor took over the request (see {@link #takeOver()}) or the
+     *         request is already completed.
+     */
+    public boolean isTakenOver() {
+        return takenOver || resultCallback.isDone();
+    }
+
+    /**
+     * Gives a request taken over by a request creation interceptor back to the
+     * {@link ThriftMiddlewareProxy}, which dispatches it again from that interceptor on: e.g.
+     * once the identical request it waited for failed with an error of its own. The
+     * interceptors that ran before aren't run again and the listeners they added are kept.
+     *
+     * @return false if the request can't be resumed: it is completed, it wasn't taken over by a
+     *         request creation interceptor, or it isn't dispatched by a
+     *         {@link ThriftMiddlewareProxy}, e.g. it is sent by a {@link ThriftClientProxy}.
+     */
+    public boolean resume() {
+        int interceptorIndex = takenOverBy;
+        if (middleware == null || interceptorIndex < 0 || resultCallback.isDone()) {
+            return false;
+        }
+        takenOver = false;
+        takenOverBy = -1;
+        middleware.resume(this, interceptorIndex);
+        return true;
+    }
+
+    void markTakenOverBy(int interceptorIndex) {
+        takenOverBy = interceptorIndex;
+    }
+
+    void setMiddleware(ThriftMiddlewareProxy<?> middleware) {
+        this.middleware = middleware;
+    }
+
+    void markCreated() {
+        createdNanos = System.nanoTime();
+    }
+
+    void markEnqueued() {
+        enqueuedNanos = System.nanoTime();
+    }
+
+    void markDequeued() {
+        dequeuedNanos = System.nanoTime();
+    }
+
+    void markHandlerStarted() {
+        handlerStartedNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks a request called right away on the calling thread, without being queued.
+     */
+    void markCalledInline() {
+        long now = System.nanoTime();
+        enqueuedNanos = now;
+        dequeuedNanos = now;
+        handlerStartedNanos = now;
+    }
+
+    InterceptorChain getInterceptorChain() {
+        return interceptorChain;
+    }
+
+    /**
+     * Calls the handler with the arguments of this request and {@link #getResultCallback()}.
+     */
+    protected abstract void invokeHandler() throws Throwable;
+
+    protected IndexOutOfBoundsException argumentIndexOutOfBounds(int index) {
+        return new IndexOutOfBoundsException("Argument " + index + " of " + getMethod());
+    }
+
+    private int indexOf(String name) {
+        int index = getArgumentIndex().indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No argument " + name + " in " + getMethod());
+        }
+        return index;
+    }
+}
@@ -7,28 +7,43 @@ import org.apache.thrift.TException;
 /**
  * Interface for intercepting Thrift requests.
  *
- * Note: Based on the current design, the interceptors shouldn't be blocking
- * because the thread on which the call is being intercepted is a non-blocking
- * thread.
+ * Note: request creation interceptors shouldn't be blocking because the
+ * thread on which the call is being intercepted is a non-blocking thread.
+ * Request pre-process interceptors run on the executor of the
+ * {@link ThriftMiddlewareProxy}, and may block when it runs requests on virtual
+ * threads (see {@link ThriftMiddlewareProxy.Builder#useVirtualThreads(int)}).
  *
  * @author uday
  */
 public interface RequestInterceptor {
 
     /**
-     * Intercept a Thrift request.
+     * Determines if this interceptor needs to see the requests of a method. It is called once per
+     * method when a {@link ThriftMiddlewareProxy} is built, see {@link InterceptorChain}.
      *
      * @param method
-     *         Method that would be invoked to process actual thrift request.
-     * @param args
-     *         arguments that would be passed to method.
+     *         Method of the asynchronous Thrift interface.
+     *
+     * @return true if {@link #intercept(RequestContext)} should be called for requests to
+     *         method. Defaults to true.
+     */
+    default boolean appliesTo(Method method) {
+        return true;
+    }
+
+    /**
+     * Intercept a Thrift request.
+     *
+     * @param context
+     *         the request, giving access to the method that would be invoked to process it and
+     *         to the arguments that would be passed to the method.
      *
      * @return a non-null {@link AsyncMethodCallbackListener<Object>} object
      *         that wants to be notified about results/exception set after
      *         processing the Thrift request. This method can also return
      *         {@link AsyncMethodCallbackListener#NO_OP_INSTANCE} if the
-     *         interceptor doesn't care about final result/exception.
+     *         interceptor doesn't care about final result/exception, or a
+     *         {@link ShortCircuit} to answer the request without the handler.
      */
-    AsyncMethodCallbackListener<Object> intercept(Method method, Object[] args)
-            throws TException;
+    AsyncMethodCallbackListener<Object> intercept(RequestContext context) throws TException;
 }
@@ -0,0 +1,81 @@
+package thrift.interceptor;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * The result of a {@link RequestInterceptor} that answers a request itself, e.g. from a cache or
+ * with a fallback response, instead of letting the handler process it.
+ *
+ * When an interceptor returns a short circuit, the request is completed with its response or
+ * exception right away, on the thread running the interceptor: the remaining interceptors and the
+ * handler are skipped, and a request answered by a request creation interceptor never reaches
+ * the executor. The listeners added by the interceptors that ran before are notified as for any
+ * other request. Answers that need no handler work are thus served from the selector thread.
+ *
+ * An interceptor that completes the request later, e.g. once an identical request completes,
+ * takes it over with {@link RequestContext#takeOver()} instead.
+ *
+ * @author uday
+ */
+public final class ShortCircuit extends AsyncMethodCallbackListener<Object> {
+
+    /**
+     * Answers a request of a method returning {@code void}.
+     */
+    public static final ShortCircuit VOID_RESPONSE = new ShortCircuit(null, null);
+
+    private final Object response;
+    private final Exception exception;
+
+    private ShortCircuit(Object response, Exception exception) {
+        super(NO_OP_INSTANCE.getAsyncMethodCallback(), DirectExecutor.INSTANCE);
+        this.response = response;
+        this.exception = exception;
+    }
+
+    /**
+     * @param response
+     *         the value returned to the client, of the return type of the method.
+     */
+    public static ShortCircuit withResponse(Object response) {
+        return response == null ? VOID_RESPONSE : new ShortCircuit(response, null);
+    }
+
+    /**
+     * @param exception
+     *         the exception returned to the client, one declared by the method to return it as
+     *         such, or any other to fail the request with a
+     *         {@link org.apache.thrift.TApplicationException}.
+     */
+    public static ShortCircuit withError(Exception exception) {
+        if (exception == null) {
+            throw new IllegalArgumentException("exception must not be null");
+        }
+        return new ShortCircuit(null, exception);
+    }
+
+    public Object getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the exception of the answer, or null if it is a response.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * Completes a request with this answer.
+     */
+    void complete(AsyncMethodCallback<Object> resultCallback) {
+        if (exception != null) {
+            resultCallback.onError(exception);
+        } else {
+            resultCallback.onComplete(response);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package thrift.interceptor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClient;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TTransportException;
+
+
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * The client side counterpart of {@link ThriftMiddlewareProxy}: runs {@link RequestInterceptor}s
+ * on each request sent through a Thrift client, e.g. to stamp a deadline on the request or to
+ * record client side metrics.
+ *
+ * Works with both the synchronous {@code Client} (through its {@code Iface}) and the
+ * {@code AsyncClient} (through its {@code AsyncIface}). The interceptors run on the calling
+ * thread before the request is sent; the listeners they return are notified of the response or
+ * of the error, as on the server. A request rejected by an interceptor isn't sent, and its error
+ * is thrown to the caller of an {@code Iface} or passed to the callback of an {@code AsyncIface}.
+ * A request answered by an interceptor (see {@link ShortCircuit}) or taken over by one (see
+ * {@link RequestContext#takeOver()}) isn't sent either, it completes with the response the
+ * interceptor supplies.
+ * Requests of a synchronous client failing with a retryable error can be sent again, see
+ * {@link Builder#retries(int, Predicate)}; the listeners are only notified of the last attempt.
+ *
+ * Methods without interceptors or retries call the client directly through a
+ * {@link MethodInvoker}, without creating a {@link RequestContext}.
+ *
+ * Use {@link ThriftMiddlewareProxy#wrap(Class, InvocationHandler)} to create the proxied
+ * interface.
+ *
+ * @author uday
+ */
+public class ThriftClientProxy<T> implements InvocationHandler {
+
+    private final T client;
+    private final Map<Method, InterceptorChain> interceptorChains;
+    private final int maxAttempts;
+    private final Predicate<Exception> retryable;
+
+    private ThriftClientProxy(T client, Map<Method, InterceptorChain> interceptorChains,
+                              int maxAttempts, Predicate<Exception> retryable) {
+        this.client = client;
+        this.interceptorChains = interceptorChains;
+        this.maxAttempts = maxAttempts;
+        this.retryable = retryable;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        InterceptorChain interceptorChain = interceptorChains.get(method);
+        if (interceptorChain == null) {
+            // not a Thrift method (e.g. Object#toString()), nothing to intercept.
+            return method.invoke(client, args);
+        }
+        if (!interceptorChain.isIntercepted() && maxAttempts == 1) {
+            return interceptorChain.getMethodInvoker().invoke(args);
+        }
+        int last = args.length - 1;
+        if (last >= 0 && args[last] instanceof AsyncMethodCallback
+                && interceptorChain.getArgumentIndex().size() == last) {
+            invokeAsync(interceptorChain, args);
+            return null;
+        }
+        return invokeSync(interceptorChain, args);
+    }
+
+    private Object invokeSync(InterceptorChain interceptorChain, Object[] args) throws Throwable {
+        ListenableAsyncMethodCallback<Object> resultCallback =
+                new ListenableAsyncMethodCallback<>();
+        RequestContext context = new ArrayRequestContext(interceptorChain, args, resultCallback);
+        context.markCreated();
+        try {
+            if (!interceptorChain.processRequestCreationInterceptors(context)) {
+                return awaitResult(resultCallback);
+            }
+        } catch (Exception e) {
+            resultCallback.onError(e);
+            throw e;
+        }
+        context.markCalledInline();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Object result = interceptorChain.getMethodInvoker().invoke(args);
+                resultCallback.onComplete(result);
+                return result;
+            } catch (Exception e) {
+                if (attempt < maxAttempts && isRetryable(e)) {
+                    continue;
+                }
+                resultCallback.onError(e);
+                throw e;
+            } catch (Throwable t) {
+                resultCallback.onError(new TException(t));
+                throw t;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invokeAsync(InterceptorChain interceptorChain, Object[] args) {
+        int last = args.length - 1;
+        ListenableAsyncMethodCallback<Object> resultCallback =
+                new ListenableAsyncMethodCallback<>((AsyncMethodCallback<Object>) args[last]);
+        RequestContext context = new ArrayRequestContext(interceptorChain, args, resultCallback);
+        context.markCreated();
+        try {
+            if (!interceptorChain.processRequestCreationInterceptors(context)) {
+                return;
+            }
+        } catch (Exception e) {
+            resultCallback.onError(e);
+            return;
+        }
+        context.markCalledInline();
+        args[last] = resultCallback;
+        try {
+            interceptorChain.getMethodInvoker().invoke(args);
+        } catch (Exception e) {
+            resultCallback.onError(e);
+        } catch (Throwable t) {
+            resultCallback.onError(new TException(t));
+        }
+    }
+
+    /**
+     * A transport or protocol error leaves the connection unusable: a late response to the
+     * failed attempt could still arrive and answer the next one. Such errors are never retried on
+     * the same client.
+     */
+    private boolean isRetryable(Exception e) {
+        return !(e instanceof TTransportException) && !(e instanceof TProtocolException)
+                && retryable.test(e);
+    }
+
+    /**
+     * Waits for the interceptor that took over a request to complete it.
+     */
+    private static Object awaitResult(ListenableAsyncMethodCallback<Object> resultCallback)
+            throws Exception {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        resultCallback.addListener(new AsyncMethodCallbackListener<>(
+                new AsyncMethodCallback<Object>() {
+                    @Override
+                    public void onComplete(Object response) {
+                        result.complete(response);
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        result.completeExceptionally(exception);
+                    }
+                }, DirectExecutor.INSTANCE));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    public static class Builder<T> {
+
+        private final T client;
+        private final List<RequestInterceptor> requestInterceptors = new ArrayList<>();
+        private int maxAttempts = 1;
+        private Predicate<Exception> retryable = e -> false;
+
+        /**
+         * @param client
+         *         a Thrift {@code Client} or {@code AsyncClient}.
+         */
+        public Builder(T client) {
+            this.client = client;
+        }
+
+        /**
+         * Adds an interceptor run on the calling thread before each request is sent.
+         */
+        public Builder<T> addRequestInterceptor(RequestInterceptor interceptor) {
+            requestInterceptors.add(interceptor);
+            return this;
+        }
+
+        /**
+         * Sends a request up to {@code maxAttempts} times while it fails with an error that
+         * {@code retryable} accepts, e.g. a {@link org.apache.thrift.TApplicationException} of an
+         * overloaded server. The interceptors run once per request, not per attempt.
+         *
+         * Only synchronous clients retry: an {@code AsyncClient} is unusable once a request
+         * failed, Thrift closes its transport before notifying the callback. Transport and
+         * protocol errors aren't retried either, the connection they happened on must be
+         * replaced.
+         */
+        public Builder<T> retries(int maxAttempts, Predicate<Exception> retryable) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("maxAttempts must be positive: "
+                        + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            this.retryable = retryable;
+            return this;
+        }
+
+        public ThriftClientProxy<T> build() {
+            if (maxAttempts > 1 && client instanceof TAsyncClient) {
+                throw new IllegalStateException("Retries require a synchronous client");
+            }
+            return new ThriftClientProxy<>(client, buildInterceptorChains(), maxAttempts,
+                    retryable);
+        }
+
+        private Map<Method, InterceptorChain> buildInterceptorChains() {
+            Map<Method, InterceptorChain> interceptorChains = new HashMap<>();
+            for (Class<?> c = client.getClass(); c != null; c = c.getSuperclass()) {
+                for (Class<?> iface : c.getInterfaces()) {
+                    for (Method method : iface.getMethods()) {
+                        interceptorChains.computeIfAbsent(method,
+                                m -> new InterceptorChain(m, MethodInvoker.bind(m, client),
+                                        requestInterceptors, Collections.emptyList()));
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(interceptorChains);
+        }
+    }
+}
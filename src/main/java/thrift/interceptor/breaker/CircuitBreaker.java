@@ -0,0 +1,332 @@
+package thrift.interceptor.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calls to a failing dependency for a while, so they fail fast instead of waiting for the
+ * failure.
+ *
+ * The outcome of each call is recorded in a {@link SlidingWindow} of time buckets. Once the window
+ * holds at least {@code minimumCalls} calls and the rate of failed calls or of slow calls reaches
+ * its threshold, the circuit opens and every call is rejected for {@code openDuration}. The
+ * circuit then turns half-open and lets {@code halfOpenProbes} calls through: it closes again when
+ * all of them succeed in time and opens again as soon as one fails or is slow, or if they don't
+ * all complete within {@code probeTimeout}, e.g. because a probe hangs. The outcome of a probe
+ * let through by an earlier half-open period is ignored.
+ *
+ * Deciding whether a call is permitted doesn't lock or allocate, and neither does recording its
+ * outcome.
+ *
+ * @author uday
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Whether a call is permitted, and as what. Has to be passed back with the outcome of the
+     * call.
+     *
+     * The probes of a half-open period share a permit created when the period starts, which
+     * tells them apart from the probes of the earlier periods.
+     */
+    public static final class Permit {
+
+        public static final Permit REJECTED = new Permit(-1);
+        public static final Permit CALL = new Permit(-1);
+
+        // number of the half-open period, or -1 if not a probe.
+        private final long generation;
+
+        private Permit(long generation) {
+            this.generation = generation;
+        }
+
+        public boolean isProbe() {
+            return generation >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return this == REJECTED ? "REJECTED" : this == CALL ? "CALL" : "PROBE-" + generation;
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<CircuitBreaker, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(CircuitBreaker.class, State.class, "state");
+
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final long probeTimeoutNanos;
+    private final LongSupplier clock;
+    private final SlidingWindow window;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntilNanos;
+    // held by the thread starting a half-open period, the only one turning OPEN into HALF_OPEN.
+    private final AtomicBoolean halfOpening = new AtomicBoolean();
+    // permit and deadline of the current half-open period, set before the state turns
+    // HALF_OPEN.
+    private volatile Permit probe = new Permit(0);
+    private volatile long probeDeadlineNanos;
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    private CircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDurationNanos;
+        this.minimumCalls = builder.minimumCalls;
+        this.openDurationNanos = builder.openDurationNanos;
+        this.halfOpenProbes = builder.halfOpenProbes;
+        this.probeTimeoutNanos = builder.probeTimeoutNanos;
+        this.clock = builder.clock;
+        this.window = new SlidingWindow(builder.windowNanos, builder.windowBuckets,
+                clock.getAsLong());
+    }
+
+    /**
+     * @return {@link Permit#REJECTED} if the circuit is open, or if it is half-open and all the
+     *         probes are taken. Otherwise the call is permitted, and its outcome has to be
+     *         reported with {@link #onResult(Permit, long, boolean)} or
+     *         {@link #onCancel(Permit)}.
+     */
+    public Permit tryAcquire() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return Permit.CALL;
+        }
+        if (current == State.OPEN) {
+            long now = clock.getAsLong();
+            if (now - openUntilNanos < 0 || !halfOpening.compareAndSet(false, true)) {
+                // still open, or another thread is starting the half-open period.
+                return Permit.REJECTED;
+            }
+            try {
+                // the period may have started, and even ended, since the state was read.
+                if (state == State.OPEN && now - openUntilNanos >= 0) {
+                    probe = new Permit(probe.generation + 1);
+                    probeDeadlineNanos = now + probeTimeoutNanos;
+                    probeSuccesses.set(0);
+                    probePermits.set(halfOpenProbes);
+                    state = State.HALF_OPEN;
+                }
+            } finally {
+                halfOpening.set(false);
+            }
+        }
+        for (;;) {
+            int permits = probePermits.get();
+            if (permits <= 0 || state != State.HALF_OPEN) {
+                return permits <= 0 ? rejectOrReopen() : acquireOutsideHalfOpen();
+            }
+            if (probePermits.compareAndSet(permits, permits - 1)) {
+                return probe;
+            }
+        }
+    }
+
+    private Permit acquireOutsideHalfOpen() {
+        return state == State.CLOSED ? Permit.CALL : Permit.REJECTED;
+    }
+
+    /**
+     * Called once all the probes are taken: opens the circuit again if they didn't complete in
+     * time.
+     */
+    private Permit rejectOrReopen() {
+        if (state == State.HALF_OPEN && clock.getAsLong() - probeDeadlineNanos >= 0) {
+            open(State.HALF_OPEN);
+        }
+        return acquireOutsideHalfOpen();
+    }
+
+    /**
+     * Reports the outcome of a permitted call.
+     *
+     * @param durationNanos
+     *         how long the call took.
+     * @param failed
+     *         whether the call failed.
+     */
+    public void onResult(Permit permit, long durationNanos, boolean failed) {
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        if (permit.isProbe()) {
+            if (permit != probe || state != State.HALF_OPEN) {
+                // a probe of an earlier half-open period.
+                return;
+            }
+            if (failed || slow) {
+                open(State.HALF_OPEN);
+            } else if (probeSuccesses.incrementAndGet() == halfOpenProbes
+                    && STATE.compareAndSet(this, State.HALF_OPEN, State.CLOSED)) {
+                window.reset();
+            }
+            return;
+        }
+        if (permit != Permit.CALL) {
+            return;
+        }
+        long now = clock.getAsLong();
+        window.record(now, failed, slow);
+        if (state == State.CLOSED && (failed || slow) && exceedsThresholds(window.sum(now))) {
+            open(State.CLOSED);
+        }
+    }
+
+    /**
+     * Reports a permitted call that was abandoned before it ran, e.g. shed while queued. A probe
+     * is given back so another call can take it.
+     */
+    public void onCancel(Permit permit) {
+        if (permit == probe && state == State.HALF_OPEN) {
+            probePermits.incrementAndGet();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the rate of failed calls in the window, or 0 if it holds no call.
+     */
+    public double getFailureRate() {
+        long sum = window.sum(clock.getAsLong());
+        int calls = SlidingWindow.calls(sum);
+        return calls == 0 ? 0 : (double) SlidingWindow.failures(sum) / calls;
+    }
+
+    /**
+     * @return the rate of slow calls in the window, or 0 if it holds no call.
+     */
+    public double getSlowCallRate() {
+        long sum = window.sum(clock.getAsLong());
+        int calls = SlidingWindow.calls(sum);
+        return calls == 0 ? 0 : (double) SlidingWindow.slowCalls(sum) / calls;
+    }
+
+    private boolean exceedsThresholds(long sum) {
+        int calls = SlidingWindow.calls(sum);
+        if (calls < minimumCalls) {
+            return false;
+        }
+        return SlidingWindow.failures(sum) >= failureRateThreshold * calls
+                || SlidingWindow.slowCalls(sum) >= slowCallRateThreshold * calls;
+    }
+
+    private void open(State from) {
+        probePermits.set(0);
+        openUntilNanos = clock.getAsLong() + openDurationNanos;
+        STATE.compareAndSet(this, from, State.OPEN);
+    }
+
+    public static class Builder {
+
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 1.0;
+        private long slowCallDurationNanos = Long.MAX_VALUE;
+        private int minimumCalls = 20;
+        private long windowNanos = TimeUnit.SECONDS.toNanos(10);
+        private int windowBuckets = 10;
+        private long openDurationNanos = TimeUnit.SECONDS.toNanos(5);
+        private int halfOpenProbes = 5;
+        private long probeTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * @param failureRateThreshold
+         *         rate of failed calls, between 0 and 1, opening the circuit. Defaults to 0.5.
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Opens the circuit once the rate of calls taking {@code slowCallDuration} or more
+         * reaches {@code slowCallRateThreshold}. Slow calls aren't tracked by default.
+         */
+        public Builder slowCalls(double slowCallRateThreshold, long slowCallDuration,
+                                 TimeUnit unit) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * @param minimumCalls
+         *         number of calls the window must hold before the circuit can open. Defaults
+         *         to 20.
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * Computes the rates over the last {@code window}, split in {@code buckets} buckets.
+         * Defaults to 10 seconds in 10 buckets.
+         */
+        public Builder window(long window, TimeUnit unit, int buckets) {
+            this.windowNanos = unit.toNanos(window);
+            this.windowBuckets = buckets;
+            return this;
+        }
+
+        /**
+         * How long the circuit stays open before letting probes through. Defaults to 5
+         * seconds.
+         */
+        public Builder openDuration(long openDuration, TimeUnit unit) {
+            this.openDurationNanos = unit.toNanos(openDuration);
+            return this;
+        }
+
+        /**
+         * Number of calls let through while half-open. Defaults to 5.
+         */
+        public Builder halfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        /**
+         * How long the probes of a half-open period have to complete in, before the circuit
+         * opens again. Defaults to 10 seconds.
+         */
+        public Builder probeTimeout(long probeTimeout, TimeUnit unit) {
+            this.probeTimeoutNanos = unit.toNanos(probeTimeout);
+            return this;
+        }
+
+        /**
+         * @param clock
+         *         monotonic time in nanoseconds, {@link System#nanoTime()} by default.
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            if (halfOpenProbes <= 0) {
+                throw new IllegalArgumentException("halfOpenProbes must be positive: "
+                        + halfOpenProbes);
+            }
+            return new CircuitBreaker(this);
+        }
+    }
+}
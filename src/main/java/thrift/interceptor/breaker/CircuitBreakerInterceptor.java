@@ -0,0 +1,206 @@
+package thrift.interceptor.breaker;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.scheduling.TenantExtractor;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * A request creation interceptor with a {@link CircuitBreaker} per method, and optionally per
+ * client, rejecting requests with {@link CircuitBreakerOpenException} while the circuit is open.
+ *
+ * Rejections are decided on the selector thread without allocating. The outcome of admitted
+ * requests is recorded when they complete: the duration of a request is measured from the time
+ * it started on the executor, and requests that never started, e.g. those shed while queued,
+ * don't count.
+ *
+ * The circuit breaker of a client that sent no request for {@code idleTimeout} is dropped, so
+ * the breakers of clients that went away don't pile up. Every time a breaker is created for a
+ * new client, a couple of the existing ones are checked, so no request pays for a full sweep.
+ *
+ * @author uday
+ */
+public class CircuitBreakerInterceptor implements RequestInterceptor {
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 10;
+    // breakers checked for idleness per breaker created.
+    private static final int SWEEP_BATCH = 2;
+
+    private final Supplier<CircuitBreaker> circuitBreakerFactory;
+    private final TenantExtractor clientExtractor;
+    private final Predicate<Exception> isFailure;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<Method, ClientBreakers> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an interceptor with a circuit breaker per method, where every error is a failure.
+     */
+    public CircuitBreakerInterceptor(CircuitBreaker.Builder circuitBreakerBuilder) {
+        this(circuitBreakerBuilder::build, null, e -> true);
+    }
+
+    /**
+     * @param circuitBreakerFactory
+     *         creates the circuit breaker of a method, or of a client of a method.
+     * @param clientExtractor
+     *         extracts the client of a request to have a circuit breaker per client, or null.
+     * @param isFailure
+     *         whether an error completing a request is a failure of the handler. For example,
+     *         errors the handler is expected to return can be left out.
+     */
+    public CircuitBreakerInterceptor(Supplier<CircuitBreaker> circuitBreakerFactory,
+                                     TenantExtractor clientExtractor,
+                                     Predicate<Exception> isFailure) {
+        this(circuitBreakerFactory, clientExtractor, isFailure, DEFAULT_IDLE_TIMEOUT_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param idleTimeout
+     *         how long the circuit breaker of a client is kept without requests from it.
+     *         Defaults to 10 minutes.
+     */
+    public CircuitBreakerInterceptor(Supplier<CircuitBreaker> circuitBreakerFactory,
+                                     TenantExtractor clientExtractor,
+                                     Predicate<Exception> isFailure, long idleTimeout,
+                                     TimeUnit unit) {
+        this.circuitBreakerFactory = circuitBreakerFactory;
+        this.clientExtractor = clientExtractor;
+        this.isFailure = isFailure;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(context);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            throw CircuitBreakerOpenException.INSTANCE;
+        }
+        return new AsyncMethodCallbackListener<>(new Outcome(circuitBreaker, permit, context),
+                DirectExecutor.INSTANCE);
+    }
+
+    /**
+     * @param client
+     *         the client, or {@link TenantExtractor#DEFAULT_TENANT} without a circuit breaker per
+     *         client.
+     *
+     * @return the circuit breaker of a method for the client.
+     */
+    public CircuitBreaker getCircuitBreaker(Method method, Object client) {
+        ClientBreakers methodBreakers = breakers.get(method);
+        if (methodBreakers == null) {
+            methodBreakers = breakers.computeIfAbsent(method, m -> new ClientBreakers());
+        }
+        return methodBreakers.get(client, System.nanoTime());
+    }
+
+    /**
+     * @return number of circuit breakers kept for a method, one per client.
+     */
+    public int getCircuitBreakerCount(Method method) {
+        ClientBreakers methodBreakers = breakers.get(method);
+        return methodBreakers == null ? 0 : methodBreakers.breakers.size();
+    }
+
+    private CircuitBreaker getCircuitBreaker(RequestContext context) {
+        Object client = clientExtractor == null ? null : clientExtractor.getTenant(context);
+        return getCircuitBreaker(context.getMethod(),
+                client == null ? TenantExtractor.DEFAULT_TENANT : client);
+    }
+
+    /**
+     * The circuit breakers of a method, per client.
+     */
+    private class ClientBreakers {
+
+        private final ConcurrentHashMap<Object, ClientBreaker> breakers =
+                new ConcurrentHashMap<>();
+        // where the last sweep stopped, guarded by this.
+        private Iterator<ClientBreaker> sweep;
+
+        CircuitBreaker get(Object client, long now) {
+            ClientBreaker breaker = breakers.get(client);
+            if (breaker == null) {
+                breaker = breakers.computeIfAbsent(client, c -> new ClientBreaker(
+                        circuitBreakerFactory.get()));
+                sweep(now);
+            }
+            // a plain write, requests of the same client racing to update it are equivalent.
+            breaker.lastUsedNanos = now;
+            return breaker.circuitBreaker;
+        }
+
+        private synchronized void sweep(long now) {
+            for (int i = 0; i < SWEEP_BATCH; i++) {
+                if (sweep == null || !sweep.hasNext()) {
+                    sweep = breakers.values().iterator();
+                    if (!sweep.hasNext()) {
+                        return;
+                    }
+                }
+                if (now - sweep.next().lastUsedNanos >= idleTimeoutNanos) {
+                    sweep.remove();
+                }
+            }
+        }
+    }
+
+    private static final class ClientBreaker {
+
+        private final CircuitBreaker circuitBreaker;
+        private long lastUsedNanos;
+
+        ClientBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            this.lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    private class Outcome implements AsyncMethodCallback<Object> {
+
+        private final CircuitBreaker circuitBreaker;
+        private final CircuitBreaker.Permit permit;
+        private final RequestContext context;
+
+        Outcome(CircuitBreaker circuitBreaker, CircuitBreaker.Permit permit,
+                RequestContext context) {
+            this.circuitBreaker = circuitBreaker;
+            this.permit = permit;
+            this.context = context;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            record(false);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            record(isFailure.test(exception));
+        }
+
+        private void record(boolean failed) {
+            long startedNanos = context.getDequeuedNanos();
+            if (startedNanos == 0) {
+                circuitBreaker.onCancel(permit);
+            } else {
+                circuitBreaker.onResult(permit, System.nanoTime() - startedNanos, failed);
+            }
+        }
+    }
+}
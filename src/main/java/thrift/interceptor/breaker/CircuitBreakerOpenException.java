@@ -0,0 +1,27 @@
+package thrift.interceptor.breaker;
+
+import org.apache.thrift.TException;
+
+/**
+ * Completes a request rejected because the circuit of its method is open, see
+ * {@link CircuitBreaker}.
+ *
+ * The instance is shared and carries no stack trace.
+ *
+ * @author uday
+ */
+public class CircuitBreakerOpenException extends TException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final CircuitBreakerOpenException INSTANCE = new CircuitBreakerOpenException();
+
+    private CircuitBreakerOpenException() {
+        super("Circuit breaker open");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
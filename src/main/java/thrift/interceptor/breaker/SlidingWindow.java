@@ -0,0 +1,101 @@
+package thrift.interceptor.breaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts calls, failed calls and slow calls over the last {@code buckets} time buckets.
+ *
+ * Each bucket is a single {@code long} holding the low 16 bits of its bucket number and three
+ * 16-bit counters, updated with compare-and-set. A bucket left over from an earlier turn of the
+ * ring is reset by the first call recorded into it. Counters saturate at 65535 calls per bucket;
+ * calls beyond that aren't recorded, which keeps the rates of the bucket unchanged.
+ *
+ * @author uday
+ */
+class SlidingWindow {
+
+    static final int MAX_BUCKETS = 32;
+
+    private static final long COUNTER_MASK = 0xFFFF;
+    private static final int EPOCH_SHIFT = 48;
+    private static final int CALLS_SHIFT = 32;
+    private static final int FAILURES_SHIFT = 16;
+    // sums of up to MAX_BUCKETS counters fit in 21 bits.
+    private static final int SUM_BITS = 21;
+    private static final long SUM_MASK = (1L << SUM_BITS) - 1;
+
+    private final AtomicLongArray buckets;
+    private final long bucketNanos;
+    private final long originNanos;
+
+    SlidingWindow(long windowNanos, int buckets, long nowNanos) {
+        if (buckets <= 0 || buckets > MAX_BUCKETS) {
+            throw new IllegalArgumentException("buckets must be between 1 and " + MAX_BUCKETS
+                    + ": " + buckets);
+        }
+        this.buckets = new AtomicLongArray(buckets);
+        this.bucketNanos = Math.max(1, windowNanos / buckets);
+        this.originNanos = nowNanos;
+    }
+
+    void record(long nowNanos, boolean failed, boolean slow) {
+        long epoch = (nowNanos - originNanos) / bucketNanos;
+        int index = (int) (epoch % buckets.length());
+        long epochBits = (epoch & COUNTER_MASK) << EPOCH_SHIFT;
+        long increment = (1L << CALLS_SHIFT) + (failed ? 1L << FAILURES_SHIFT : 0)
+                + (slow ? 1 : 0);
+        for (;;) {
+            long bucket = buckets.get(index);
+            long next;
+            if ((bucket & (COUNTER_MASK << EPOCH_SHIFT)) != epochBits) {
+                next = epochBits + increment;
+            } else if (((bucket >>> CALLS_SHIFT) & COUNTER_MASK) == COUNTER_MASK) {
+                return;
+            } else {
+                next = bucket + increment;
+            }
+            if (buckets.compareAndSet(index, bucket, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the calls, failed calls and slow calls of the window, packed in 21 bits each; see
+     *         {@link #calls(long)}, {@link #failures(long)} and {@link #slowCalls(long)}.
+     */
+    long sum(long nowNanos) {
+        long epoch = (nowNanos - originNanos) / bucketNanos;
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            long bucket = buckets.get(i);
+            long age = (epoch - (bucket >>> EPOCH_SHIFT)) & COUNTER_MASK;
+            if (age < buckets.length()) {
+                calls += (bucket >>> CALLS_SHIFT) & COUNTER_MASK;
+                failures += (bucket >>> FAILURES_SHIFT) & COUNTER_MASK;
+                slowCalls += bucket & COUNTER_MASK;
+            }
+        }
+        return (calls << (2 * SUM_BITS)) | (failures << SUM_BITS) | slowCalls;
+    }
+
+    static int calls(long sum) {
+        return (int) ((sum >>> (2 * SUM_BITS)) & SUM_MASK);
+    }
+
+    static int failures(long sum) {
+        return (int) ((sum >>> SUM_BITS) & SUM_MASK);
+    }
+
+    static int slowCalls(long sum) {
+        return (int) (sum & SUM_MASK);
+    }
+
+    void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
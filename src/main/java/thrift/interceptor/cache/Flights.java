@@ -0,0 +1,195 @@
+package thrift.interceptor.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.ListenableAsyncMethodCallback;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+import thrift.interceptor.scheduling.OverloadException;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * The distinct requests of a single method in flight: a request identical to one in flight, its
+ * leader, follows it instead of being processed again.
+ *
+ * A follower is taken over (see {@link RequestContext#takeOver()}) and listens on the result
+ * callback of its leader, so it is completed with the response or the error of the leader, from
+ * the thread completing the leader. An error specific to the leader, rather than to the request
+ * it shares with its followers, e.g. its own deadline passing or the server shedding it, isn't
+ * passed on: the followers are resumed (see {@link RequestContext#resume()}), so they join a new
+ * flight, one of them leading it. Followers that can't be resumed, those of a client, fail with
+ * the error of the leader. Shared by {@link RequestCoalescingInterceptor} and
+ * {@link ResponseCache}.
+ *
+ * @author uday
+ */
+final class Flights {
+
+    private final ScheduledExecutorService timer;
+    private final Predicate<? super Exception> leaderFailure;
+    // result callback of the leader, by request.
+    private final ConcurrentHashMap<RequestKey, ListenableAsyncMethodCallback<Object>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * @param timer
+     *         fails the followers at their deadline, may be null if followers never time out.
+     * @param leaderFailure
+     *         tells the errors specific to a leader, besides {@link OverloadException} and
+     *         {@link DeadlineExceededException}.
+     */
+    Flights(ScheduledExecutorService timer, Predicate<? super Exception> leaderFailure) {
+        this.timer = timer;
+        this.leaderFailure = leaderFailure;
+    }
+
+    /**
+     * Makes a request the leader of its flight, or a follower of the identical request in flight.
+     *
+     * @param timeoutMillis
+     *         if positive, a follower is failed with {@link DeadlineExceededException} once it
+     *         waited that long, even though its leader is still being processed.
+     * @return true if the request leads its flight: its flight must be ended with
+     *         {@link #land(RequestKey, ListenableAsyncMethodCallback)} once it completes, e.g.
+     *         by a listener on {@link #landing(RequestKey, ListenableAsyncMethodCallback)}.
+     */
+    boolean join(RequestKey key, RequestContext context, long timeoutMillis) {
+        ListenableAsyncMethodCallback<Object> resultCallback = context.getResultCallback();
+        ListenableAsyncMethodCallback<Object> leader;
+        for (;;) {
+            leader = inFlight.putIfAbsent(key, resultCallback);
+            if (leader == null) {
+                return true;
+            }
+            if (!leader.isDone()) {
+                break;
+            }
+            // the leader completed but didn't land yet, e.g. its followers are being resumed.
+            if (inFlight.replace(key, leader, resultCallback)) {
+                return true;
+            }
+        }
+        coalescedCount.increment();
+        context.takeOver();
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> expiry = timer.schedule(
+                    () -> resultCallback.onError(DeadlineExceededException.INSTANCE),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            resultCallback.addListener(new AsyncMethodCallbackListener<>(
+                    new ExpiryCancellation(expiry), DirectExecutor.INSTANCE));
+        }
+        leader.addListener(new AsyncMethodCallbackListener<>(new Follower(context),
+                DirectExecutor.INSTANCE));
+        return false;
+    }
+
+    /**
+     * Ends the flight of a leader, so later identical requests are processed again.
+     */
+    void land(RequestKey key, ListenableAsyncMethodCallback<Object> leader) {
+        inFlight.remove(key, leader);
+    }
+
+    /**
+     * @return a callback ending the flight of leader once it completes.
+     */
+    AsyncMethodCallback<Object> landing(RequestKey key,
+            ListenableAsyncMethodCallback<Object> leader) {
+        return new Landing(key, leader);
+    }
+
+    /**
+     * @return number of requests that followed an identical request in flight.
+     */
+    long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * @return number of distinct requests in flight.
+     */
+    int size() {
+        return inFlight.size();
+    }
+
+    private boolean isLeaderFailure(Exception exception) {
+        return exception instanceof OverloadException
+                || exception instanceof DeadlineExceededException
+                || leaderFailure.test(exception);
+    }
+
+    /**
+     * Completes a follower with the result of its leader, or resumes it if the leader failed with
+     * an error of its own.
+     */
+    private final class Follower implements AsyncMethodCallback<Object> {
+
+        private final RequestContext context;
+
+        Follower(RequestContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            context.getResultCallback().onComplete(response);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            if (!isLeaderFailure(exception) || !context.resume()) {
+                context.getResultCallback().onError(exception);
+            }
+        }
+    }
+
+    private final class Landing implements AsyncMethodCallback<Object> {
+
+        private final RequestKey key;
+        private final ListenableAsyncMethodCallback<Object> leader;
+
+        Landing(RequestKey key, ListenableAsyncMethodCallback<Object> leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            land(key, leader);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            land(key, leader);
+        }
+    }
+
+    private static final class ExpiryCancellation implements AsyncMethodCallback<Object> {
+
+        private final ScheduledFuture<?> expiry;
+
+        ExpiryCancellation(ScheduledFuture<?> expiry) {
+            this.expiry = expiry;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            expiry.cancel(false);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            expiry.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package thrift.interceptor.cache;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+
+/**
+ * A struct field reset to its default before requests are compared, see {@link RequestKeys}.
+ * Unsetting it isn't enough: the generated equals() compares the value of fields that aren't
+ * optional even when they aren't set.
+ *
+ * @author uday
+ */
+final class IgnoredField {
+
+    private final TFieldIdEnum field;
+    private final Object defaultValue;
+    private final boolean setByDefault;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    IgnoredField(Class<? extends TBase> structType, TFieldIdEnum field) {
+        TBase defaults;
+        try {
+            defaults = structType.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create " + structType, e);
+        }
+        this.field = field;
+        this.defaultValue = defaults.getFieldValue(field);
+        this.setByDefault = defaults.isSet(field);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void reset(TBase struct) {
+        struct.setFieldValue(field, defaultValue);
+        if (!setByDefault) {
+            struct.setFieldValue(field, null);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package thrift.interceptor.cache;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+import thrift.interceptor.scheduling.DeadlineExtractor;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * Coalesces identical requests in flight: a request identical to one being processed waits for
+ * the response of that request, its leader, instead of being processed again.
+ *
+ * Requests are compared by their arguments, except for the struct fields declared with
+ * {@link Builder#ignoreField(Class, TFieldIdEnum)}, e.g. a timeout. A follower is taken over (see
+ * {@link RequestContext#takeOver()}) and listens on the result callback of its leader, so it is
+ * completed with the response or the error of the leader, from the thread completing the leader.
+ * If the leader fails with an error specific to it (see {@link Builder#leaderFailure}), e.g. an
+ * {@link thrift.interceptor.scheduling.OverloadException} or its own deadline passing, the
+ * followers are resumed instead (see {@link RequestContext#resume()}) and one of them leads them.
+ * Nothing is kept once the leader completes; see {@link ResponseCacheInterceptor} to also serve
+ * the response to later requests.
+ *
+ * A follower doesn't inherit the deadline of its leader: with a {@link DeadlineExtractor}, each
+ * follower is failed with {@link DeadlineExceededException} when its own deadline passes, even
+ * though its leader is still being processed. A request whose deadline already passed isn't
+ * coalesced.
+ *
+ * Run it as a request creation interceptor, after the interceptors that should see every request
+ * and before the ones that should only see the requests processed.
+ *
+ * @author uday
+ */
+public class RequestCoalescingInterceptor implements RequestInterceptor {
+
+    private final Set<String> methodNames;
+    private final Map<Class<?>, List<IgnoredField>> ignoredFields;
+    private final Predicate<? super Exception> leaderFailure;
+    private final DeadlineExtractor deadlineExtractor;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<Method, MethodFlights> methodFlights =
+            new ConcurrentHashMap<>();
+
+    private RequestCoalescingInterceptor(Builder builder) {
+        this.methodNames = Collections.unmodifiableSet(new HashSet<>(builder.methodNames));
+        this.ignoredFields = Collections.unmodifiableMap(new HashMap<>(builder.ignoredFields));
+        this.leaderFailure = builder.leaderFailure;
+        this.deadlineExtractor = builder.deadlineExtractor;
+        this.clock = builder.clock;
+        this.timer = builder.timer != null ? builder.timer : createTimer();
+    }
+
+    @Override
+    public boolean appliesTo(Method method) {
+        return methodNames.contains(method.getName());
+    }
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        MethodFlights flights = getMethodFlights(context.getMethod());
+        if (flights == null) {
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        long deadline = deadlineExtractor == null ? DeadlineExtractor.NO_DEADLINE
+                : deadlineExtractor.getDeadline(context);
+        long timeoutMillis = deadline == DeadlineExtractor.NO_DEADLINE ? 0
+                : deadline - clock.getAsLong();
+        if (deadline != DeadlineExtractor.NO_DEADLINE && timeoutMillis <= 0) {
+            // left to the interceptors and queues that reject expired requests.
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        RequestKey key = flights.keys.keyOf(context);
+        if (!flights.flights.join(key, context, timeoutMillis)) {
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        return new AsyncMethodCallbackListener<>(
+                flights.flights.landing(key, context.getResultCallback()),
+                DirectExecutor.INSTANCE);
+    }
+
+    /**
+     * @return number of requests of method that waited for an identical request in flight.
+     */
+    public long getCoalescedCount(Method method) {
+        MethodFlights flights = methodFlights.get(method);
+        return flights == null ? 0 : flights.flights.getCoalescedCount();
+    }
+
+    /**
+     * @return number of distinct requests of method in flight.
+     */
+    public int getInFlightCount(Method method) {
+        MethodFlights flights = methodFlights.get(method);
+        return flights == null ? 0 : flights.flights.size();
+    }
+
+    private MethodFlights getMethodFlights(Method method) {
+        MethodFlights flights = methodFlights.get(method);
+        if (flights == null) {
+            if (!methodNames.contains(method.getName())) {
+                return null;
+            }
+            flights = methodFlights.computeIfAbsent(method,
+                    m -> new MethodFlights(new RequestKeys(m, ignoredFields),
+                            new Flights(timer, leaderFailure)));
+        }
+        return flights;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "request-coalescing-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // completed followers cancel their expiry, don't keep it until its deadline.
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static final class MethodFlights {
+
+        private final RequestKeys keys;
+        private final Flights flights;
+
+        MethodFlights(RequestKeys keys, Flights flights) {
+            this.keys = keys;
+            this.flights = flights;
+        }
+    }
+
+    public static class Builder extends SingleFlightBuilder<Builder> {
+
+        private final Set<String> methodNames = new HashSet<>();
+        private DeadlineExtractor deadlineExtractor;
+        private LongSupplier clock = System::currentTimeMillis;
+        private ScheduledExecutorService timer;
+
+        /**
+         * Coalesces the requests of a method of the asynchronous Thrift interface.
+         */
+        public Builder coalesce(String methodName) {
+            methodNames.add(methodName);
+            return this;
+        }
+
+        /**
+         * Fails each follower when its own deadline passes. Without it, followers wait for their
+         * leader however long it takes.
+         *
+         * @param deadlineExtractor
+         *         extracts the deadline of a request, in epoch milliseconds.
+         */
+        public Builder deadlineExtractor(DeadlineExtractor deadlineExtractor) {
+            this.deadlineExtractor = deadlineExtractor;
+            return this;
+        }
+
+        /**
+         * @param clock
+         *         current time in epoch milliseconds, {@link System#currentTimeMillis()} by
+         *         default.
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Sets the timer failing followers at their deadline. By default, a single daemon thread
+         * owned by the interceptor.
+         */
+        public Builder timer(ScheduledExecutorService timer) {
+            this.timer = timer;
+            return this;
+        }
+
+        public RequestCoalescingInterceptor build() {
+            return new RequestCoalescingInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package thrift.interceptor.cache;
+
+import java.util.Arrays;
+
+/**
+ * The significant arguments of a request, compared by value.
+ *
+ * @author uday
+ */
+final class RequestKey {
+
+    private final Object[] arguments;
+    private final int hashCode;
+
+    RequestKey(Object[] arguments) {
+        this.arguments = arguments;
+        this.hashCode = Arrays.deepHashCode(arguments);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return hashCode == other.hashCode && Arrays.deepEquals(arguments, other.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
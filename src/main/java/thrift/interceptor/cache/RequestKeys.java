@@ -0,0 +1,53 @@
+package thrift.interceptor.cache;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.thrift.TBase;
+
+
+import thrift.interceptor.ArgumentIndex;
+import thrift.interceptor.RequestContext;
+
+/**
+ * Builds the {@link RequestKey}s of the requests of a method: their arguments, with the
+ * {@link IgnoredField}s of struct arguments reset to their default.
+ *
+ * @author uday
+ */
+final class RequestKeys {
+
+    private final int argumentCount;
+    // per argument, the fields reset before it is compared, or null.
+    private final IgnoredField[][] ignoredFields;
+
+    RequestKeys(Method method, Map<Class<?>, List<IgnoredField>> ignoredFieldsByType) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.argumentCount = ArgumentIndex.of(method).size();
+        this.ignoredFields = new IgnoredField[argumentCount][];
+        for (int i = 0; i < argumentCount; i++) {
+            List<IgnoredField> fields = ignoredFieldsByType.get(parameterTypes[i]);
+            if (fields != null) {
+                ignoredFields[i] = fields.toArray(new IgnoredField[0]);
+            }
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    RequestKey keyOf(RequestContext context) {
+        Object[] arguments = new Object[argumentCount];
+        for (int i = 0; i < argumentCount; i++) {
+            Object argument = context.getArgument(i);
+            if (ignoredFields[i] != null && argument != null) {
+                TBase copy = ((TBase) argument).deepCopy();
+                for (IgnoredField field : ignoredFields[i]) {
+                    field.reset(copy);
+                }
+                argument = copy;
+            }
+            arguments[i] = argument;
+        }
+        return new RequestKey(arguments);
+    }
+}
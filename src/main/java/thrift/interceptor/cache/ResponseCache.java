@@ -0,0 +1,197 @@
+package thrift.interceptor.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.ListenableAsyncMethodCallback;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.ShortCircuit;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * The responses of a single method, by arguments, with single-flight loading.
+ *
+ * A response is cached for {@code ttl} after the request computing it completes, and the least
+ * recently used responses are evicted once the cache holds more than {@code maxSize} of them.
+ * While a request is in flight, identical requests follow it (see {@link Flights}) instead of
+ * computing its response again; if it fails, they fail with the same error, unless the error is
+ * specific to it (see {@link Flights}), and nothing is cached.
+ * Requests in flight are tracked apart from the responses, so they are never evicted.
+ *
+ * @author uday
+ */
+public class ResponseCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Flights flights;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by lock.
+    private final LinkedHashMap<RequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxSize
+     *         maximum number of responses held.
+     * @param ttlNanos
+     *         how long a response is served after it was computed.
+     * @param clock
+     *         current time in nanoseconds, e.g. {@link System#nanoTime()}.
+     * @param leaderFailure
+     *         the errors specific to a request in flight, see {@link Flights}.
+     */
+    ResponseCache(int maxSize, long ttlNanos, LongSupplier clock,
+                  Predicate<? super Exception> leaderFailure) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.flights = new Flights(null, leaderFailure);
+    }
+
+    /**
+     * Looks up the response of a request.
+     *
+     * @return a {@link ShortCircuit} answering the request if its response is cached. If an
+     *         identical request is in flight, the request is taken over (see
+     *         {@link RequestContext#takeOver()}) and completed with its response. Otherwise the
+     *         listener that caches the response of this one.
+     */
+    AsyncMethodCallbackListener<Object> lookup(RequestKey key, RequestContext context) {
+        ShortCircuit cached = get(key);
+        if (cached == null) {
+            if (!flights.join(key, context, 0)) {
+                return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+            }
+            // a leader caches its response before landing, so it is seen by now if it landed
+            // since the first lookup.
+            cached = get(key);
+            if (cached == null) {
+                missCount.increment();
+                return new AsyncMethodCallbackListener<>(
+                        new Load(key, context.getResultCallback()), DirectExecutor.INSTANCE);
+            }
+            flights.land(key, context.getResultCallback());
+        }
+        hitCount.increment();
+        return cached;
+    }
+
+    /**
+     * @return the response of a request, or null if it isn't cached or expired.
+     */
+    private ShortCircuit get(RequestKey key) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (clock.getAsLong() - entry.expiresNanos >= 0) {
+                entries.remove(key);
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ShortCircuit.withResponse(entry.response);
+    }
+
+    private void put(RequestKey key, Object response) {
+        Entry entry = new Entry(response, clock.getAsLong() + ttlNanos);
+        lock.lock();
+        try {
+            entries.put(key, entry);
+            if (entries.size() > maxSize) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of responses held.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of requests served with a cached response.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return number of requests that computed their response.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of requests that waited for an identical request in flight.
+     */
+    public long getCoalescedCount() {
+        return flights.getCoalescedCount();
+    }
+
+    private static final class Entry {
+
+        private final Object response;
+        private final long expiresNanos;
+
+        Entry(Object response, long expiresNanos) {
+            this.response = response;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    /**
+     * Caches the response of a leader, then ends its flight.
+     */
+    private final class Load implements AsyncMethodCallback<Object> {
+
+        private final RequestKey key;
+        private final ListenableAsyncMethodCallback<Object> leader;
+
+        Load(RequestKey key, ListenableAsyncMethodCallback<Object> leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            put(key, response);
+            flights.land(key, leader);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            flights.land(key, leader);
+        }
+    }
+}
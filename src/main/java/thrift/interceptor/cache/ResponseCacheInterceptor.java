@@ -0,0 +1,150 @@
+package thrift.interceptor.cache;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.ShortCircuit;
+
+/**
+ * Serves the requests of idempotent methods from a {@link ResponseCache} per method.
+ *
+ * Requests are cached by their arguments, compared by value, except for the struct fields
+ * declared with {@link Builder#ignoreField(Class, TFieldIdEnum)}, e.g. a timeout or a trace id
+ * that differs between requests without changing their response. A cached request is answered
+ * with a {@link ShortCircuit} on the thread running the interceptor, so it never reaches the
+ * executor; a request identical to one in flight is taken over (see
+ * {@link RequestContext#takeOver()}) and completed with its response instead of being processed
+ * again, however long that takes; run a {@link RequestCoalescingInterceptor} with a deadline
+ * before it to fail such requests at their own deadline. Only successful responses are cached.
+ *
+ * Run it as a request creation interceptor, after the interceptors that should see the cached
+ * requests (e.g. metrics) and before the ones that should only see the requests processed (e.g.
+ * concurrency limits).
+ *
+ * @author uday
+ */
+public class ResponseCacheInterceptor implements RequestInterceptor {
+
+    private final Map<String, CacheConfig> configs;
+    private final Map<Class<?>, List<IgnoredField>> ignoredFields;
+    private final Predicate<? super Exception> leaderFailure;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<Method, MethodCache> methodCaches = new ConcurrentHashMap<>();
+
+    private ResponseCacheInterceptor(Builder builder) {
+        this.configs = Collections.unmodifiableMap(new HashMap<>(builder.configs));
+        this.ignoredFields = Collections.unmodifiableMap(new HashMap<>(builder.ignoredFields));
+        this.leaderFailure = builder.leaderFailure;
+        this.clock = builder.clock;
+    }
+
+    @Override
+    public boolean appliesTo(Method method) {
+        return configs.containsKey(method.getName());
+    }
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        MethodCache methodCache = getMethodCache(context.getMethod());
+        if (methodCache == null) {
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        return methodCache.cache.lookup(methodCache.keys.keyOf(context), context);
+    }
+
+    /**
+     * @return the cache of method, or null if its responses aren't cached or it received no
+     *         request yet.
+     */
+    public ResponseCache getCache(Method method) {
+        MethodCache methodCache = methodCaches.get(method);
+        return methodCache == null ? null : methodCache.cache;
+    }
+
+    private MethodCache getMethodCache(Method method) {
+        MethodCache methodCache = methodCaches.get(method);
+        if (methodCache == null) {
+            CacheConfig config = configs.get(method.getName());
+            if (config == null) {
+                return null;
+            }
+            methodCache = methodCaches.computeIfAbsent(method, m -> new MethodCache(
+                    new ResponseCache(config.maxSize, config.ttlNanos, clock, leaderFailure),
+                    new RequestKeys(m, ignoredFields)));
+        }
+        return methodCache;
+    }
+
+    private static final class CacheConfig {
+
+        private final int maxSize;
+        private final long ttlNanos;
+
+        CacheConfig(int maxSize, long ttlNanos) {
+            this.maxSize = maxSize;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+
+    private static final class MethodCache {
+
+        private final ResponseCache cache;
+        private final RequestKeys keys;
+
+        MethodCache(ResponseCache cache, RequestKeys keys) {
+            this.cache = cache;
+            this.keys = keys;
+        }
+    }
+
+    public static class Builder extends SingleFlightBuilder<Builder> {
+
+        private final Map<String, CacheConfig> configs = new HashMap<>();
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Caches the responses of a method of the asynchronous Thrift interface.
+         *
+         * @param maxSize
+         *         maximum number of responses cached for the method, besides its requests in
+         *         flight.
+         * @param ttl
+         *         how long a response is served after it was computed.
+         */
+        public Builder cache(String methodName, int maxSize, long ttl, TimeUnit unit) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+            }
+            configs.put(methodName, new CacheConfig(maxSize, unit.toNanos(ttl)));
+            return this;
+        }
+
+        /**
+         * @param clock
+         *         current time in nanoseconds, {@link System#nanoTime()} by default.
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ResponseCacheInterceptor build() {
+            return new ResponseCacheInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package thrift.interceptor.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+
+
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+import thrift.interceptor.scheduling.OverloadException;
+
+/**
+ * Base of the builders of the interceptors letting identical requests in flight wait for one of
+ * them, their leader, see {@link Flights}. Requests are compared by their arguments, see
+ * {@link RequestKeys}.
+ *
+ * @param <B>
+ *         type of the builder, returned by its methods.
+ * @author uday
+ */
+abstract class SingleFlightBuilder<B extends SingleFlightBuilder<B>> {
+
+    final Map<Class<?>, List<IgnoredField>> ignoredFields = new HashMap<>();
+    Predicate<? super Exception> leaderFailure = e -> false;
+
+    /**
+     * Ignores a field of the struct arguments of type structType when requests are compared,
+     * e.g. {@code ignoreField(Options.class, Options._Fields.TIMEOUT)}.
+     */
+    @SuppressWarnings("unchecked")
+    public <F extends TFieldIdEnum> B ignoreField(
+            Class<? extends TBase<?, F>> structType, F field) {
+        ignoredFields.computeIfAbsent(structType, t -> new ArrayList<>())
+                .add(new IgnoredField(structType, field));
+        return (B) this;
+    }
+
+    /**
+     * Declares the errors specific to the request that fails with them, rather than to its
+     * arguments, besides {@link OverloadException} and {@link DeadlineExceededException}: e.g.
+     * the error of an interceptor timing out a request. The requests waiting for a leader
+     * failing with such an error aren't failed with it but resumed (see
+     * {@link RequestContext#resume()}), one of them becoming the new leader.
+     */
+    @SuppressWarnings("unchecked")
+    public B leaderFailure(Predicate<? super Exception> leaderFailure) {
+        this.leaderFailure = leaderFailure;
+        return (B) this;
+    }
+}
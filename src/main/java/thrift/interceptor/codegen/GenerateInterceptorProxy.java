@@ -0,0 +1,27 @@
+package thrift.interceptor.codegen;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a typed interceptor proxy for every Thrift {@code AsyncIface} implemented by the
+ * annotated handler.
+ *
+ * For a service {@code com.example.FooService}, {@link InterceptorProxyProcessor} emits
+ * {@code com.example.FooServiceInterceptorProxy}, an implementation of
+ * {@code FooService.AsyncIface} that runs the interceptors of a
+ * {@link thrift.interceptor.ThriftMiddlewareProxy} and calls the handler with its declared
+ * argument types. Unlike {@link thrift.interceptor.ThriftMiddlewareProxy#wrap}, no argument array
+ * is allocated and primitives are not boxed: each request is held in a
+ * {@link thrift.interceptor.RequestContext} with typed fields.
+ *
+ * @author uday
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateInterceptorProxy {
+}
@@ -0,0 +1,356 @@
+package thrift.interceptor.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor behind {@link GenerateInterceptorProxy}.
+ *
+ * For every {@code AsyncIface} nested in a Thrift service class and implemented by an annotated
+ * handler, a {@code <Service>InterceptorProxy} class is written to the package of the service.
+ * Each generated method wraps the result callback into a typed
+ * {@link thrift.interceptor.RequestContext} that keeps the arguments unboxed, and the context
+ * calls the handler with the original arguments.
+ *
+ * @author uday
+ */
+@SupportedAnnotationTypes("thrift.interceptor.codegen.GenerateInterceptorProxy")
+public class InterceptorProxyProcessor extends AbstractProcessor {
+
+    private static final String ASYNC_IFACE = "AsyncIface";
+    private static final String PROXY_SUFFIX = "InterceptorProxy";
+    private static final Map<TypeKind, String> PRIMITIVE_GETTERS = new EnumMap<>(TypeKind.class);
+
+    static {
+        PRIMITIVE_GETTERS.put(TypeKind.BOOLEAN, "getBoolean");
+        PRIMITIVE_GETTERS.put(TypeKind.BYTE, "getByte");
+        PRIMITIVE_GETTERS.put(TypeKind.SHORT, "getShort");
+        PRIMITIVE_GETTERS.put(TypeKind.INT, "getInt");
+        PRIMITIVE_GETTERS.put(TypeKind.LONG, "getLong");
+        PRIMITIVE_GETTERS.put(TypeKind.DOUBLE, "getDouble");
+    }
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateInterceptorProxy.class)) {
+            if (!(element instanceof TypeElement)) {
+                continue;
+            }
+            boolean found = false;
+            for (TypeElement asyncIface : findAsyncIfaces((TypeElement) element)) {
+                found = true;
+                TypeElement service = (TypeElement) asyncIface.getEnclosingElement();
+                String proxyName = service.getQualifiedName() + PROXY_SUFFIX;
+                if (generated.add(proxyName)) {
+                    writeProxy(service, asyncIface, element);
+                }
+            }
+            if (!found) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@GenerateInterceptorProxy requires a Thrift AsyncIface implementation",
+                        element);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the Thrift {@code AsyncIface}s implemented by a type or any of its superclasses.
+     */
+    private Set<TypeElement> findAsyncIfaces(TypeElement type) {
+        Set<TypeElement> asyncIfaces = new HashSet<>();
+        for (TypeElement t = type; t != null; t = superclass(t)) {
+            for (TypeMirror iface : t.getInterfaces()) {
+                TypeElement ifaceElement = (TypeElement) ((DeclaredType) iface).asElement();
+                if (ifaceElement.getSimpleName().contentEquals(ASYNC_IFACE)
+                        && ifaceElement.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                    asyncIfaces.add(ifaceElement);
+                }
+            }
+        }
+        return asyncIfaces;
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private void writeProxy(TypeElement service, TypeElement asyncIface, Element origin) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(service);
+        String simpleName = service.getSimpleName() + PROXY_SUFFIX;
+        String ifaceName = asyncIface.getQualifiedName().toString();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(
+                processingEnv.getElementUtils().getAllMembers(asyncIface));
+
+        StringBuilder src = new StringBuilder();
+        src.append("/**\n")
+                .append(" * Autogenerated by ").append(getClass().getName()).append("\n")
+                .append(" *\n")
+                .append(" * DO NOT EDIT\n")
+                .append(" */\n");
+        if (!pkg.isUnnamed()) {
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        src.append("/**\n")
+                .append(" * Typed interceptor proxy for {@link ").append(ifaceName).append("}.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements ").append(ifaceName).append(" {\n\n");
+
+        for (ExecutableElement method : methods) {
+            if (isThriftMethod(method)) {
+                appendMethodConstant(src, ifaceName, method);
+            }
+        }
+
+        src.append("    private final thrift.interceptor.ThriftMiddlewareProxy<? extends ")
+                .append(ifaceName).append("> middleware$;\n")
+                .append("    private final ").append(ifaceName).append(" asyncIface$;\n");
+        for (ExecutableElement method : methods) {
+            if (isThriftMethod(method)) {
+                src.append("    private final thrift.interceptor.InterceptorChain ")
+                        .append(chainField(method)).append(";\n");
+            }
+        }
+        src.append("\n")
+                .append("    public ").append(simpleName)
+                .append("(thrift.interceptor.ThriftMiddlewareProxy<? extends ")
+                .append(ifaceName).append("> middleware) {\n")
+                .append("        this.middleware$ = middleware;\n")
+                .append("        this.asyncIface$ = middleware.getAsyncIface();\n");
+        for (ExecutableElement method : methods) {
+            if (isThriftMethod(method)) {
+                src.append("        this.").append(chainField(method))
+                        .append(" = middleware.getInterceptorChain(")
+                        .append(methodConstant(method)).append(");\n");
+            }
+        }
+        src.append("    }\n");
+
+        for (ExecutableElement method : methods) {
+            if (isThriftMethod(method)) {
+                appendMethod(src, method);
+            }
+        }
+        for (ExecutableElement method : methods) {
+            if (isThriftMethod(method)) {
+                appendContextClass(src, ifaceName, method);
+            }
+        }
+        src.append("}\n");
+
+        String qualifiedName = pkg.isUnnamed()
+                ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(qualifiedName, origin).openWriter()) {
+            writer.write(src.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write " + qualifiedName + ": " + e.getMessage(), origin);
+        }
+    }
+
+    private static boolean isThriftMethod(ExecutableElement method) {
+        return method.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                && !method.getModifiers().contains(Modifier.STATIC)
+                && !method.getModifiers().contains(Modifier.DEFAULT)
+                && !method.getParameters().isEmpty();
+    }
+
+    private void appendMethodConstant(StringBuilder src, String ifaceName,
+                                      ExecutableElement method) {
+        String constant = methodConstant(method);
+        src.append("    private static final java.lang.reflect.Method ").append(constant)
+                .append(";\n\n")
+                .append("    static {\n")
+                .append("        try {\n")
+                .append("            ").append(constant).append(" = ").append(ifaceName)
+                .append(".class.getMethod(\"").append(method.getSimpleName()).append("\"");
+        for (VariableElement parameter : method.getParameters()) {
+            src.append(", ").append(processingEnv.getTypeUtils().erasure(parameter.asType()))
+                    .append(".class");
+        }
+        src.append(");\n")
+                .append("        } catch (java.lang.NoSuchMethodException e) {\n")
+                .append("            throw new java.lang.ExceptionInInitializerError(e);\n")
+                .append("        }\n")
+                .append("    }\n\n");
+    }
+
+    private void appendMethod(StringBuilder src, ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        // thrift puts the AsyncMethodCallback argument at the end of each AsyncIface method.
+        int callbackIndex = parameters.size() - 1;
+
+        src.append("\n    @java.lang.Override\n")
+                .append("    public void ").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            src.append(i == 0 ? "" : ", ").append(parameter.asType())
+                    .append(" ").append(parameter.getSimpleName());
+        }
+        src.append(")");
+        List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++) {
+            src.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+        src.append(" {\n")
+                .append("        middleware$.dispatch(new ").append(contextClass(method))
+                .append("(").append(chainField(method)).append(",\n")
+                .append("                middleware$.listenOnResultCallback(")
+                .append(parameters.get(callbackIndex).getSimpleName()).append("), asyncIface$");
+        for (int i = 0; i < callbackIndex; i++) {
+            src.append(", ").append(parameters.get(i).getSimpleName());
+        }
+        src.append("));\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Appends a {@code RequestContext} holding the arguments of method in typed fields.
+     */
+    private void appendContextClass(StringBuilder src, String ifaceName,
+                                    ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        int callbackIndex = parameters.size() - 1;
+        String contextClass = contextClass(method);
+
+        src.append("\n    private static final class ").append(contextClass)
+                .append(" extends thrift.interceptor.RequestContext {\n\n")
+                .append("        private final ").append(ifaceName).append(" asyncIface$;\n");
+        for (int i = 0; i < callbackIndex; i++) {
+            VariableElement parameter = parameters.get(i);
+            src.append("        private final ").append(parameter.asType()).append(" ")
+                    .append(parameter.getSimpleName()).append(";\n");
+        }
+        src.append("\n        ").append(contextClass)
+                .append("(thrift.interceptor.InterceptorChain chain$,\n")
+                .append("                thrift.interceptor.ListenableAsyncMethodCallback"
+                        + "<java.lang.Object> callback$,\n")
+                .append("                ").append(ifaceName).append(" asyncIface$");
+        for (int i = 0; i < callbackIndex; i++) {
+            VariableElement parameter = parameters.get(i);
+            src.append(", ").append(parameter.asType()).append(" ")
+                    .append(parameter.getSimpleName());
+        }
+        src.append(") {\n")
+                .append("            super(chain$, callback$);\n")
+                .append("            this.asyncIface$ = asyncIface$;\n");
+        for (int i = 0; i < callbackIndex; i++) {
+            Name name = parameters.get(i).getSimpleName();
+            src.append("            this.").append(name).append(" = ").append(name)
+                    .append(";\n");
+        }
+        src.append("        }\n\n")
+                .append("        @java.lang.Override\n")
+                .append("        public java.lang.Object getArgument(int index) {\n")
+                .append("            switch (index) {\n");
+        for (int i = 0; i < callbackIndex; i++) {
+            src.append("                case ").append(i).append(": return this.")
+                    .append(parameters.get(i).getSimpleName()).append(";\n");
+        }
+        src.append("                default: throw argumentIndexOutOfBounds(index);\n")
+                .append("            }\n")
+                .append("        }\n");
+
+        // primitive getters that don't box the arguments. Fields are qualified with this in the
+        // getters, as an argument may be named index.
+        for (TypeKind kind : PRIMITIVE_GETTERS.keySet()) {
+            StringBuilder cases = new StringBuilder();
+            for (int i = 0; i < callbackIndex; i++) {
+                if (parameters.get(i).asType().getKind() == kind) {
+                    cases.append("                case ").append(i).append(": return this.")
+                            .append(parameters.get(i).getSimpleName()).append(";\n");
+                }
+            }
+            if (cases.length() == 0) {
+                continue;
+            }
+            String getter = PRIMITIVE_GETTERS.get(kind);
+            src.append("\n        @java.lang.Override\n")
+                    .append("        public ").append(kind.name().toLowerCase()).append(" ")
+                    .append(getter).append("(int index) {\n")
+                    .append("            switch (index) {\n")
+                    .append(cases)
+                    .append("                default: return super.").append(getter)
+                    .append("(index);\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        }
+
+        src.append("\n        @java.lang.Override\n")
+                .append("        protected void invokeHandler() throws java.lang.Throwable {\n")
+                .append("            asyncIface$.").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < callbackIndex; i++) {
+            src.append(parameters.get(i).getSimpleName()).append(", ");
+        }
+        src.append("(").append(processingEnv.getTypeUtils()
+                .erasure(parameters.get(callbackIndex).asType()))
+                .append(") getResultCallback());\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Converts a method name like {@code getFooBar} into {@code GetFooBarRequestContext}.
+     */
+    private static String contextClass(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1) + "RequestContext";
+    }
+
+    private static String chainField(ExecutableElement method) {
+        return method.getSimpleName() + "Chain$";
+    }
+
+    /**
+     * Converts a method name like {@code getFooBar} into {@code GET_FOO_BAR_METHOD}.
+     */
+    private static String methodConstant(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        StringBuilder constant = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.append("_METHOD").toString();
+    }
+}
@@ -0,0 +1,247 @@
+package thrift.interceptor.dispatch;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands requests from the threads receiving them over to worker threads through a preallocated
+ * ring of slots, an alternative to an {@link java.util.concurrent.Executor} with a task queue.
+ *
+ * The ring is a bounded multi-producer multi-consumer queue in the style of the LMAX Disruptor:
+ * producers and workers claim slots by incrementing their sequence with compare-and-set, and
+ * every slot carries the sequence it expects next, so publishing a request writes its slot and
+ * releases it without a lock, and neither side allocates. A request offered to a full ring is
+ * refused instead of blocking the producer. Idle workers wait according to a
+ * {@link WaitStrategy}.
+ *
+ * The workers are daemon threads, started when the dispatcher is created and running until
+ * {@link #shutdown(Consumer)}. An exception thrown by the consumer is reported to the
+ * uncaught exception handler of the worker, which keeps running.
+ *
+ * @author uday
+ */
+public class RingBufferDispatcher<E> {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    // guards against a missed wake up, which the publication protocol should prevent.
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int mask;
+    private final Object[] elements;
+    // sequence each slot expects: its producer sequence when free, plus one once published.
+    private final AtomicLongArray slotSequences;
+    private final Sequence producerSequence = new Sequence();
+    private final Sequence consumerSequence = new Sequence();
+    private final WaitStrategy waitStrategy;
+    private final Consumer<E> consumer;
+    private final ConcurrentLinkedDeque<Thread> parkedWorkers = new ConcurrentLinkedDeque<>();
+    // set before running is cleared.
+    private volatile Consumer<? super E> unprocessed;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity
+     *         number of slots, rounded up to a power of two.
+     * @param workers
+     *         number of worker threads.
+     * @param consumer
+     *         processes each request, on a worker thread.
+     */
+    public RingBufferDispatcher(int capacity, int workers, WaitStrategy waitStrategy,
+                                Consumer<E> consumer, String threadNamePrefix) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new Object[size];
+        this.slotSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slotSequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+        this.consumer = consumer;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, threadNamePrefix + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Publishes a request for the workers.
+     *
+     * @param element
+     *         the request, may be null if the consumer accepts it.
+     *
+     * @return false if the ring is full.
+     */
+    public boolean offer(E element) {
+        if (!running) {
+            return false;
+        }
+        long sequence;
+        for (;;) {
+            sequence = producerSequence.get();
+            int slot = (int) sequence & mask;
+            long difference = slotSequences.get(slot) - sequence;
+            if (difference == 0) {
+                if (producerSequence.compareAndSet(sequence, sequence + 1)) {
+                    elements[slot] = element;
+                    slotSequences.set(slot, sequence + 1);
+                    break;
+                }
+            } else if (difference < 0) {
+                // the slot still holds the request published a lap ago.
+                return false;
+            }
+        }
+        if (!running) {
+            // published after shutdown drained the ring.
+            drain();
+            return true;
+        }
+        if (waitStrategy == WaitStrategy.PARK) {
+            Thread parked = parkedWorkers.poll();
+            if (parked != null) {
+                LockSupport.unpark(parked);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of requests published and not yet taken by a worker.
+     */
+    public int size() {
+        return (int) Math.max(0, producerSequence.get() - consumerSequence.get());
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Stops the workers once they finish the requests they are processing. New requests are
+     * refused.
+     *
+     * @param unprocessed
+     *         called, on the calling thread, with each request still in the ring, e.g. to fail
+     *         it.
+     */
+    public void shutdown(Consumer<? super E> unprocessed) {
+        this.unprocessed = unprocessed;
+        running = false;
+        for (Thread parked; (parked = parkedWorkers.poll()) != null; ) {
+            LockSupport.unpark(parked);
+        }
+        drain();
+    }
+
+    private void work() {
+        int idleTries = 0;
+        while (running) {
+            try {
+                idleTries = poll(consumer) ? 0 : idle(idleTries);
+            } catch (Throwable t) {
+                report(t);
+                idleTries = 0;
+            }
+        }
+    }
+
+    /**
+     * Passes the requests left in the ring to the unprocessed callback of
+     * {@link #shutdown(Consumer)}.
+     */
+    private void drain() {
+        Consumer<? super E> action = unprocessed;
+        for (;;) {
+            try {
+                if (!poll(action)) {
+                    return;
+                }
+            } catch (Throwable t) {
+                report(t);
+            }
+        }
+    }
+
+    /**
+     * Takes the next request from the ring and passes it to action.
+     *
+     * @return false if the ring is empty.
+     */
+    private boolean poll(Consumer<? super E> action) {
+        for (;;) {
+            long sequence = consumerSequence.get();
+            int slot = (int) sequence & mask;
+            long difference = slotSequences.get(slot) - (sequence + 1);
+            if (difference < 0) {
+                return false;
+            }
+            if (difference == 0 && consumerSequence.compareAndSet(sequence, sequence + 1)) {
+                @SuppressWarnings("unchecked")
+                E element = (E) elements[slot];
+                elements[slot] = null;
+                // frees the slot for the producer one lap ahead.
+                slotSequences.set(slot, sequence + mask + 1);
+                action.accept(element);
+                return true;
+            }
+        }
+    }
+
+    private static void report(Throwable t) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+    }
+
+    /**
+     * Waits for the ring to become non-empty.
+     *
+     * @return the number of tries so far.
+     */
+    private int idle(int tries) {
+        if (waitStrategy == WaitStrategy.BUSY_SPIN || tries < SPIN_TRIES) {
+            return tries + 1;
+        }
+        if (waitStrategy == WaitStrategy.YIELD || tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return tries + 1;
+        }
+        Thread worker = Thread.currentThread();
+        parkedWorkers.push(worker);
+        // a request published before the push was missed by the producer's poll.
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        parkedWorkers.remove(worker);
+        return tries;
+    }
+
+    private boolean isEmpty() {
+        long sequence = consumerSequence.get();
+        return slotSequences.get((int) sequence & mask) - (sequence + 1) < 0;
+    }
+
+    /**
+     * A sequence padded to its own cache line, so producers and workers don't invalidate each
+     * other's sequence.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
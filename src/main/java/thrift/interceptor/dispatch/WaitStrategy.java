@@ -0,0 +1,28 @@
+package thrift.interceptor.dispatch;
+
+/**
+ * How the worker threads of a {@link RingBufferDispatcher} wait for requests when the ring is
+ * empty, trading CPU for handoff latency.
+ *
+ * @author uday
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins on the ring. The lowest latency, but every worker keeps a core busy even without
+     * requests: use it with fewer workers than cores.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spins briefly, then yields the core between checks of the ring. Close to
+     * {@link #BUSY_SPIN} when there are spare cores, and lets other threads run otherwise.
+     */
+    YIELD,
+
+    /**
+     * Spins and yields briefly, then parks until a request is published. Idle workers use no
+     * CPU, but waking one up costs the producer an unpark and the request a few microseconds.
+     */
+    PARK
+}
@@ -12,6 +12,8 @@ import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 
 
+import thrift.interceptor.ThriftClientProxy;
+import thrift.interceptor.ThriftMiddlewareProxy;
 import thrift.interceptor.example.multiply.MultiplicationService;
 import thrift.interceptor.example.multiply.Options;
 
@@ -19,9 +21,10 @@ import thrift.interceptor.example.multiply.Options;
  * A simple Thrift client implementation that calls a multiplication endpoint on
  * {@link MultiplicationService}.
  *
- * On each request, a timeout value is added which denotes the time in epoch ms at which the client
- * will abandon waiting for the results. In addition to the timeout, a client id is passed in the
- * request as well which would help the server decide the priority/rejection of a request.
+ * On each request, a timeout value is added by {@link DeadlineInterceptor}, run by a
+ * {@link ThriftClientProxy}, which denotes the time in epoch ms at which the client will abandon
+ * waiting for the results. In addition to the timeout, a client id is passed in the request as
+ * well which would help the server decide the priority/rejection of a request.
  *
  * @author uday
  */
@@ -42,8 +45,11 @@ public class Client {
             transport = new TFramedTransport(tSocket);
 
             TProtocol protocol = new TBinaryProtocol(transport);
-            MultiplicationService.Client client = new MultiplicationService
-                    .Client(protocol);
+            MultiplicationService.Iface client = ThriftMiddlewareProxy.wrap(
+                    MultiplicationService.Iface.class,
+                    new ThriftClientProxy.Builder<>(new MultiplicationService.Client(protocol))
+                            .addRequestInterceptor(new DeadlineInterceptor(SOCKET_TIMEOUT))
+                            .build());
             perform(client, clientId);
             tSocket.close();
         } catch (TException e) {
@@ -51,7 +57,7 @@ public class Client {
         }
     }
 
-    protected void perform(MultiplicationService.Client client, int clientId) {
+    protected void perform(MultiplicationService.Iface client, int clientId) {
         try {
             int a = 3, b = 5;
             int product = multiply(client, clientId, a, b);
@@ -68,8 +74,7 @@ public class Client {
 
     protected int multiply(MultiplicationService.Iface client, int clientId, int a,
                            int b) throws Exception {
-        return client.multiply(a, b,
-                new Options(System.currentTimeMillis() + SOCKET_TIMEOUT, clientId));
+        return client.multiply(a, b, new Options().setClientId(clientId));
     }
 }
 
@@ -0,0 +1,39 @@
+package thrift.interceptor.example.client;
+
+import org.apache.thrift.TException;
+
+
+import thrift.interceptor.ArgumentInterceptor;
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.example.multiply.Options;
+
+/**
+ * Stamps the time in epoch ms at which the client abandons waiting for the result on the
+ * {@link Options} of each request that doesn't carry one yet.
+ *
+ * @author uday
+ */
+public class DeadlineInterceptor extends ArgumentInterceptor<Options> {
+
+    private final long timeoutMillis;
+
+    /**
+     * @param timeoutMillis
+     *         how long the client waits for the result of a request.
+     */
+    public DeadlineInterceptor(long timeoutMillis) {
+        super(Options.class);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context,
+                                                         Options options)
+            throws TException {
+        if (options != null && !options.isSetTimeout()) {
+            options.setTimeout(System.currentTimeMillis() + timeoutMillis);
+        }
+        return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+    }
+}
@@ -0,0 +1,284 @@
+package thrift.interceptor.example.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonblockingSocket;
+
+
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.example.server.Server;
+
+/**
+ * An open-loop load generator for {@link Server}.
+ *
+ * Requests are scheduled at a fixed rate, whether or not earlier requests completed, and sent
+ * over a pool of {@link MultiplicationService.AsyncClient} connections. A request scheduled while
+ * every connection is busy waits for one, and its latency is measured from the time it was
+ * scheduled, so a slow server can't hide its latency by slowing down the load (coordinated
+ * omission). Each request carries an {@link Options#timeout} and one of several
+ * {@link Options#clientId}s, and multiplies one of {@code distinctRequests} operands, which
+ * bounds the hit ratio of the response cache of the server.
+ *
+ * The rate is swept from {@code rate} up to {@code maxRate}, multiplied by {@code rateStep} at
+ * every step, until the server can't sustain it: the saturation knee is the highest rate at
+ * which at least 95% of the requests succeeded and their p99 latency stayed under
+ * {@code sloMillis}. Each step reports the latency histograms and the number of requests per
+ * {@link Outcome}.
+ *
+ * A warm-up run at the initial rate, which isn't reported, precedes the sweep. Arguments are
+ * {@code name=value} pairs, see {@link #DEFAULTS}. Unless {@code embeddedServer}
+ * is false, a {@link Server} is started in the same JVM and the load is sent to it on loopback.
+ *
+ * @author uday
+ */
+public class LoadGenerator {
+
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("host", "localhost");
+        DEFAULTS.put("port", "9090");
+        DEFAULTS.put("embeddedServer", "true");
+        DEFAULTS.put("rate", "500");
+        DEFAULTS.put("maxRate", "64000");
+        DEFAULTS.put("rateStep", "2");
+        DEFAULTS.put("durationSeconds", "10");
+        DEFAULTS.put("warmupSeconds", "5");
+        DEFAULTS.put("connections", "64");
+        DEFAULTS.put("clients", "16");
+        DEFAULTS.put("distinctRequests", "1000000");
+        DEFAULTS.put("timeoutMillis", "1000");
+        DEFAULTS.put("sloMillis", "100");
+    }
+
+    private static final double MIN_SUCCESS_RATIO = 0.95;
+    private static final int CLIENT_MANAGERS = 4;
+
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int distinctRequests;
+    private final long timeoutMillis;
+    private final TProtocolFactory protocolFactory = new TBinaryProtocol.Factory();
+    private final List<TAsyncClientManager> clientManagers = new ArrayList<>();
+    private final Queue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+    private final Queue<Request> pendingRequests = new ConcurrentLinkedQueue<>();
+
+    public LoadGenerator(String host, int port, int connections, int clients,
+                         int distinctRequests, long timeoutMillis) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.clients = clients;
+        this.distinctRequests = distinctRequests;
+        this.timeoutMillis = timeoutMillis;
+        for (int i = 0; i < Math.min(CLIENT_MANAGERS, connections); i++) {
+            clientManagers.add(new TAsyncClientManager());
+        }
+        for (int i = 0; i < connections; i++) {
+            idleConnections.add(new Connection(clientManagers.get(i % clientManagers.size())));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                System.err.println("Unknown argument " + arg + ", expected name=value with name in "
+                        + DEFAULTS.keySet());
+                System.exit(1);
+            }
+            config.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        if (Boolean.parseBoolean(config.get("embeddedServer"))) {
+            Server.main(new String[0]);
+            // the server starts listening on its own thread.
+            Thread.sleep(1000);
+        }
+        LoadGenerator loadGenerator = new LoadGenerator(config.get("host"),
+                Integer.parseInt(config.get("port")), Integer.parseInt(config.get("connections")),
+                Integer.parseInt(config.get("clients")),
+                Integer.parseInt(config.get("distinctRequests")),
+                Long.parseLong(config.get("timeoutMillis")));
+        // lets both JVMs compile the hot paths and opens the connections.
+        loadGenerator.run(Double.parseDouble(config.get("rate")),
+                Long.parseLong(config.get("warmupSeconds")));
+        LoadResult knee = loadGenerator.sweep(Double.parseDouble(config.get("rate")),
+                Double.parseDouble(config.get("maxRate")),
+                Double.parseDouble(config.get("rateStep")),
+                Long.parseLong(config.get("durationSeconds")),
+                Long.parseLong(config.get("sloMillis")));
+        System.out.println(knee == null ? "No rate was sustained"
+                : String.format("Saturation knee: %.0f requests/s", knee.getTargetRate()));
+        System.exit(0);
+    }
+
+    /**
+     * Runs {@link #run(double, long)} at increasing rates until a rate isn't sustained.
+     *
+     * @return the result at the highest rate sustained, or null if none was.
+     */
+    public LoadResult sweep(double rate, double maxRate, double rateStep, long durationSeconds,
+                            long sloMillis) throws InterruptedException {
+        if (rateStep <= 1) {
+            throw new IllegalArgumentException("rateStep must be greater than 1: " + rateStep);
+        }
+        LoadResult knee = null;
+        for (; rate <= maxRate; rate *= rateStep) {
+            LoadResult result = run(rate, durationSeconds);
+            System.out.println(result);
+            if (!isSustained(result, sloMillis)) {
+                break;
+            }
+            knee = result;
+        }
+        return knee;
+    }
+
+    /**
+     * Sends requests at {@code rate} requests per second for {@code durationSeconds}, then waits
+     * for the outstanding requests. The requests still waiting for a connection after that are
+     * counted as {@link Outcome#CLIENT_TIMEOUT} and dropped, so they don't spill into the next run.
+     */
+    public LoadResult run(double rate, long durationSeconds) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        LoadResult result = new LoadResult(rate, durationNanos);
+        AtomicLong outstanding = new AtomicLong();
+        long start = System.nanoTime();
+        for (long i = 0; ; i++) {
+            long scheduledNanos = start + i * intervalNanos;
+            if (scheduledNanos - start >= durationNanos) {
+                break;
+            }
+            long delay;
+            while ((delay = scheduledNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            outstanding.incrementAndGet();
+            pendingRequests.add(new Request(result, outstanding, scheduledNanos,
+                    (int) (i % clients), ThreadLocalRandom.current().nextInt(distinctRequests)));
+            sendPendingRequests();
+        }
+        // requests queued for a connection can wait for a whole timeout before being sent.
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(4 * timeoutMillis);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        Request request;
+        while ((request = pendingRequests.poll()) != null) {
+            request.complete(Outcome.CLIENT_TIMEOUT);
+        }
+        return result;
+    }
+
+    private static boolean isSustained(LoadResult result, long sloMillis) {
+        long total = result.getTotalCount();
+        return total > 0
+                && result.getCount(Outcome.SUCCESS) >= MIN_SUCCESS_RATIO * total
+                && result.getSuccessLatency().getValueAtPercentile(99)
+                <= TimeUnit.MILLISECONDS.toNanos(sloMillis);
+    }
+
+    /**
+     * Sends pending requests while there are idle connections. Called whenever a request is
+     * scheduled or a connection becomes idle.
+     */
+    private void sendPendingRequests() {
+        while (!pendingRequests.isEmpty()) {
+            Connection connection = idleConnections.poll();
+            if (connection == null) {
+                return;
+            }
+            Request request = pendingRequests.poll();
+            if (request == null) {
+                idleConnections.add(connection);
+                return;
+            }
+            connection.send(request);
+        }
+    }
+
+    private class Request {
+
+        private final LoadResult result;
+        private final AtomicLong outstanding;
+        private final long scheduledNanos;
+        private final int clientId;
+        private final int operand;
+
+        Request(LoadResult result, AtomicLong outstanding, long scheduledNanos, int clientId,
+                int operand) {
+            this.result = result;
+            this.outstanding = outstanding;
+            this.scheduledNanos = scheduledNanos;
+            this.clientId = clientId;
+            this.operand = operand;
+        }
+
+        void complete(Outcome outcome) {
+            result.record(outcome, System.nanoTime() - scheduledNanos);
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private class Connection implements AsyncMethodCallback<Integer> {
+
+        private final TAsyncClientManager clientManager;
+        private MultiplicationService.AsyncClient client;
+        private Request request;
+
+        Connection(TAsyncClientManager clientManager) {
+            this.clientManager = clientManager;
+        }
+
+        void send(Request request) {
+            this.request = request;
+            try {
+                if (client == null || client.hasError()) {
+                    client = new MultiplicationService.AsyncClient(protocolFactory,
+                            clientManager, new TNonblockingSocket(host, port));
+                    client.setTimeout(timeoutMillis);
+                }
+                client.multiply(request.operand, 5, new Options(
+                        System.currentTimeMillis() + timeoutMillis, request.clientId), this);
+            } catch (Exception e) {
+                client = null;
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onComplete(Integer response) {
+            complete(Outcome.SUCCESS);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            complete(Outcome.of(exception));
+        }
+
+        private void complete(Outcome outcome) {
+            Request completed = request;
+            request = null;
+            idleConnections.add(this);
+            completed.complete(outcome);
+            sendPendingRequests();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package thrift.interceptor.example.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+import thrift.interceptor.metrics.HistogramSnapshot;
+import thrift.interceptor.metrics.LatencyHistogram;
+
+/**
+ * What {@link LoadGenerator} observed at one request rate.
+ *
+ * Latencies are measured from the time each request was scheduled to be sent, not from the time
+ * it was actually sent, so requests delayed because the client or the server fell behind count
+ * their full delay (no coordinated omission).
+ *
+ * @author uday
+ */
+public class LoadResult {
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final double targetRate;
+    private final long durationNanos;
+    private final LatencyHistogram successLatency = new LatencyHistogram();
+    private final LatencyHistogram errorLatency = new LatencyHistogram();
+    private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOMES.length);
+
+    LoadResult(double targetRate, long durationNanos) {
+        this.targetRate = targetRate;
+        this.durationNanos = durationNanos;
+    }
+
+    void record(Outcome outcome, long latencyNanos) {
+        outcomes.incrementAndGet(outcome.ordinal());
+        if (outcome == Outcome.SUCCESS) {
+            successLatency.record(latencyNanos);
+        } else {
+            errorLatency.record(latencyNanos);
+        }
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public long getCount(Outcome outcome) {
+        return outcomes.get(outcome.ordinal());
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < OUTCOMES.length; i++) {
+            total += outcomes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return successful requests per second.
+     */
+    public double getGoodput() {
+        return getCount(Outcome.SUCCESS) / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public HistogramSnapshot getSuccessLatency() {
+        return successLatency.snapshot();
+    }
+
+    public HistogramSnapshot getErrorLatency() {
+        return errorLatency.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("rate=%.0f/s goodput=%.0f/s requests=%d", targetRate,
+                getGoodput(), getTotalCount()));
+        for (Outcome outcome : OUTCOMES) {
+            long count = getCount(outcome);
+            if (count != 0) {
+                sb.append(' ').append(outcome).append('=').append(count);
+            }
+        }
+        sb.append("\n  success latency: ").append(getSuccessLatency());
+        sb.append("\n  error latency:   ").append(getErrorLatency());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package thrift.interceptor.example.loadtest;
+
+import java.util.concurrent.TimeoutException;
+
+import org.apache.thrift.TApplicationException;
+
+
+import thrift.interceptor.breaker.CircuitBreakerOpenException;
+import thrift.interceptor.example.server.RequestTimeoutInterceptor;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+
+/**
+ * How a request sent by {@link LoadGenerator} completed.
+ *
+ * Errors of the server reach the client as {@link TApplicationException}s carrying the message
+ * of the server side exception, which tells the causes apart.
+ *
+ * @author uday
+ */
+public enum Outcome {
+    SUCCESS,
+    /**
+     * Rejected by {@link RequestTimeoutInterceptor}, the request expired while queued.
+     */
+    SERVER_TIMEOUT,
+    /**
+     * Rejected by the rate limit of the client, see
+     * {@link thrift.interceptor.example.server.RequestPermitInterceptor}.
+     */
+    RATE_LIMITED,
+    /**
+     * Shed because the server is overloaded, see
+     * {@link thrift.interceptor.scheduling.OverloadException}.
+     */
+    OVERLOADED,
+    /**
+     * Discarded because it expired while queued, see {@link DeadlineExceededException}.
+     */
+    DEADLINE_EXCEEDED,
+    /**
+     * Rejected because the circuit breaker of the method is open.
+     */
+    CIRCUIT_OPEN,
+    /**
+     * The client stopped waiting for the response.
+     */
+    CLIENT_TIMEOUT,
+    /**
+     * Any other error, e.g. a connection failure.
+     */
+    OTHER_ERROR;
+
+    private static final String OVERLOADED_PREFIX = "Server overloaded";
+    private static final String RATE_LIMITED_MESSAGE = "Too many requests.";
+
+    public static Outcome of(Exception exception) {
+        if (exception instanceof TimeoutException) {
+            return CLIENT_TIMEOUT;
+        }
+        if (!(exception instanceof TApplicationException)) {
+            return OTHER_ERROR;
+        }
+        String message = exception.getMessage();
+        if (message == null) {
+            return OTHER_ERROR;
+        }
+        if (message.startsWith(OVERLOADED_PREFIX)) {
+            return OVERLOADED;
+        }
+        if (message.equals(RATE_LIMITED_MESSAGE)) {
+            return RATE_LIMITED;
+        }
+        if (message.equals(RequestTimeoutInterceptor.REQUEST_TIMEOUT_EXCEPTION.getMessage())) {
+            return SERVER_TIMEOUT;
+        }
+        if (message.equals(DeadlineExceededException.INSTANCE.getMessage())) {
+            return DEADLINE_EXCEEDED;
+        }
+        if (message.equals(CircuitBreakerOpenException.INSTANCE.getMessage())) {
+            return CIRCUIT_OPEN;
+        }
+        return OTHER_ERROR;
+    }
+}
@@ -3,14 +3,20 @@ package thrift.interceptor.example.server;
 import org.apache.thrift.async.AsyncMethodCallback;
 
 
+import thrift.interceptor.codegen.GenerateInterceptorProxy;
 import thrift.interceptor.example.multiply.MultiplicationService;
 import thrift.interceptor.example.multiply.Options;
 
 /**
  * An implementation of {@link MultiplicationService.AsyncIface}.
  *
+ * Annotated with {@link GenerateInterceptorProxy} so that
+ * {@link thrift.interceptor.example.multiply.MultiplicationServiceInterceptorProxy} is generated
+ * at compile time.
+ *
  * @author uday
  */
+@GenerateInterceptorProxy
 public class MultiplicationHandler implements MultiplicationService.AsyncIface {
 
     @Override
@@ -1,69 +1,108 @@
 package thrift.interceptor.example.server;
 
-import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TException;
-import org.apache.thrift.async.AsyncMethodCallback;
 
 
+import thrift.interceptor.ArgumentInterceptor;
 import thrift.interceptor.AsyncMethodCallbackListener;
-import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.example.multiply.MultiplicationService;
 import thrift.interceptor.example.multiply.Options;
-import thrift.interceptor.utils.DirectExecutor;
+import thrift.interceptor.limit.RateLimiter;
+import thrift.interceptor.processor.MessageInterceptor;
+import thrift.interceptor.processor.PeekedMessage;
 
 /**
  * Intercepts a Thrift request to determine if it is allowed for execution.
  *
+ * Each {@link Options#clientId} is allowed {@link #PERMITS_PER_SECOND} requests per second, with
+ * bursts of up to {@link #BURST} requests. The check doesn't block, so this interceptor can run
+ * as a request creation interceptor, rejecting requests before they are queued, or as a
+ * {@link MessageInterceptor}, rejecting requests before they are even deserialized by peeking
+ * their {@link Options#clientId}. {@link Server} uses the latter. The {@link Options} argument
+ * has a different field id in each method, so only the methods listed in
+ * {@link #CLIENT_ID_PATHS} are rate limited before deserialization.
+ *
  * @author uday
  */
-public class RequestPermitInterceptor implements RequestInterceptor {
+public class RequestPermitInterceptor extends ArgumentInterceptor<Options>
+        implements MessageInterceptor {
 
     private static final TException REQUEST_PERMIT_REJECTED = new
             TException("Too many requests.");
-    private static final int BAD_CLIENT_ID = 1;
+    private static final TApplicationException REQUEST_PERMIT_REJECTED_REPLY = new
+            TApplicationException(TApplicationException.INTERNAL_ERROR,
+            REQUEST_PERMIT_REJECTED.getMessage());
+    // Options.clientId within the arguments of each method, by method name.
+    private static final Map<String, short[]> CLIENT_ID_PATHS = Collections.singletonMap(
+            "multiply", new short[]{
+                    MultiplicationService.multiply_args._Fields.OPTIONS.getThriftFieldId(),
+                    Options._Fields.CLIENT_ID.getThriftFieldId()});
+    private static final long NO_CLIENT_ID = Long.MIN_VALUE;
+    private static final double PERMITS_PER_SECOND = 1000;
+    private static final int BURST = 100;
+    private static final long IDLE_BUCKET_TIMEOUT_SECONDS = 60;
+
+    private final RateLimiter rateLimiter;
+
+    public RequestPermitInterceptor() {
+        this(new RateLimiter(PERMITS_PER_SECOND, BURST, IDLE_BUCKET_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS));
+    }
+
+    public RequestPermitInterceptor(RateLimiter rateLimiter) {
+        super(Options.class);
+        this.rateLimiter = rateLimiter;
+    }
 
     /**
-     * Acquires permit that allows request execution.
-     *
-     * In this example, this method is going to reject any request from
-     * clientId = {@link this#BAD_CLIENT_ID}.
+     * Acquires permit that allows request execution from the rate limit of the client.
      *
-     * @param method
-     *         Method that would be invoked.
-     * @param args
-     *         arguments that would be passed to method.
+     * @param context
+     *         the request.
+     * @param options
+     *         the {@link Options} argument of the request.
      *
-     * @return a {@link AsyncMethodCallbackListener<Object>} that allows
-     *         intercepting results/exception set after invoking the method.
+     * @return {@link AsyncMethodCallbackListener#NO_OP_INSTANCE}, permits of a rate limit are
+     *         not returned when the request completes.
      * @throws TException
      *         if a permit cannot be acquired.
      */
     @Override
-    public AsyncMethodCallbackListener<Object> intercept(Method method,
-                                                         Object[] args)
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context,
+                                                         Options options)
             throws TException {
-        for (Object arg : args) {
-            if (!(arg instanceof Options)) {
-                continue;
-            }
-            Options options = (Options) arg;
-            if (options.isSetClientId()
-                    && options.getClientId() == BAD_CLIENT_ID) {
-                throw REQUEST_PERMIT_REJECTED;
-            }
-            return new AsyncMethodCallbackListener<>(new AsyncMethodCallback<Object>() {
-                @Override
-                public void onComplete(Object response) {
-                    // record success (For ex: increment permits).
-                }
-
-                @Override
-                public void onError(Exception exception) {
-                    // record exception (For ex: decrement permits)
-                    // or ignore an expected error.
-                }
-            }, DirectExecutor.INSTANCE);
+        if (options == null || !options.isSetClientId()) {
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+        if (!rateLimiter.tryAcquire(options.getClientId())) {
+            throw REQUEST_PERMIT_REJECTED;
         }
         return AsyncMethodCallbackListener.NO_OP_INSTANCE;
     }
+
+    /**
+     * Acquires permit that allows request execution from the rate limit of the client, before the
+     * request is deserialized.
+     *
+     * @return null if a permit was acquired, or the reply rejecting the request.
+     */
+    @Override
+    public TApplicationException intercept(PeekedMessage message) throws TException {
+        short[] clientIdPath = CLIENT_ID_PATHS.get(message.getMethodName());
+        if (clientIdPath == null) {
+            return null;
+        }
+        long clientId = message.getInteger(NO_CLIENT_ID, clientIdPath);
+        if (clientId == NO_CLIENT_ID) {
+            return null;
+        }
+        // the int key of Options#getClientId, so both stages share the rate limits.
+        return rateLimiter.tryAcquire((int) clientId) ? null : REQUEST_PERMIT_REJECTED_REPLY;
+    }
 }
@@ -1,12 +1,11 @@
 package thrift.interceptor.example.server;
 
-import java.lang.reflect.Method;
-
 import org.apache.thrift.TException;
 
 
+import thrift.interceptor.ArgumentInterceptor;
 import thrift.interceptor.AsyncMethodCallbackListener;
-import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.RequestContext;
 import thrift.interceptor.example.multiply.Options;
 
 /**
@@ -15,19 +14,23 @@ import thrift.interceptor.example.multiply.Options;
  *
  * @author uday
  */
-public class RequestTimeoutInterceptor implements RequestInterceptor {
+public class RequestTimeoutInterceptor extends ArgumentInterceptor<Options> {
 
     public static final TException REQUEST_TIMEOUT_EXCEPTION = new
             TException("Client timed out");
 
+    public RequestTimeoutInterceptor() {
+        super(Options.class);
+    }
+
     /**
      * Determines if a thrift request is abandoned by client based on the
-     * timeout supplied in the {@link MoreOptions}.
+     * timeout supplied in the {@link Options}.
      *
-     * @param method
-     *         Method that would be invoked.
-     * @param args
-     *         arguments that would be passed to method.
+     * @param context
+     *         the request.
+     * @param options
+     *         the {@link Options} argument of the request.
      *
      * @return {@link AsyncMethodCallbackListener.NO_OP_INSTANCE} as this
      *         interceptor is not interested in final result.
@@ -35,19 +38,12 @@ public class RequestTimeoutInterceptor implements RequestInterceptor {
      *         if the thrift request is deemed as abandoned by client.
      */
     @Override
-    public AsyncMethodCallbackListener<Object> intercept(Method method,
-                                                         Object[] args)
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context,
+                                                         Options options)
             throws TException {
-        for (Object arg : args) {
-            if (!(arg instanceof Options)) {
-                continue;
-            }
-            Options options = (Options) arg;
-            if (options.isSetTimeout()
-                    && System.currentTimeMillis() >= options.getTimeout()) {
-                throw REQUEST_TIMEOUT_EXCEPTION;
-            }
-            break;
+        if (options != null && options.isSetTimeout()
+                && System.currentTimeMillis() >= options.getTimeout()) {
+            throw REQUEST_TIMEOUT_EXCEPTION;
         }
         return AsyncMethodCallbackListener.NO_OP_INSTANCE;
     }
@@ -1,62 +1,140 @@
 package thrift.interceptor.example.server;
 
-import java.lang.reflect.InvocationHandler;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.server.TNonblockingServer;
 import org.apache.thrift.server.TServer;
 import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TNonblockingServerSocket;
 
 
+import thrift.interceptor.RequestContext;
 import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.breaker.CircuitBreaker;
+import thrift.interceptor.breaker.CircuitBreakerInterceptor;
+import thrift.interceptor.cache.ResponseCacheInterceptor;
 import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.MultiplicationServiceInterceptorProxy;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.limit.AdaptiveConcurrencyLimiter;
+import thrift.interceptor.limit.ConcurrencyLimitInterceptor;
+import thrift.interceptor.metrics.MethodMetrics;
+import thrift.interceptor.metrics.MetricsInterceptor;
+import thrift.interceptor.processor.InterceptingAsyncProcessor;
+import thrift.interceptor.scheduling.TenantExtractor;
 
 /**
  * A Thrift server serving requests using {@link MultiplicationHandler}.
  *
- * This server uses {@link ThriftMiddlewareProxy<MultiplicationService.AsyncIface>} with two
- * interceptors - {@link RequestPermitInterceptor} and {@link RequestTimeoutInterceptor}
- * that allows it handle client requests efficiently.
+ * Requests over the rate limit of their client are rejected by {@link RequestPermitInterceptor}
+ * before they are deserialized, through {@link InterceptingAsyncProcessor}. The others go
+ * through {@link ThriftMiddlewareProxy<MultiplicationService.AsyncIface>} with
+ * interceptors - {@link ResponseCacheInterceptor}, {@link CircuitBreakerInterceptor},
+ * {@link ConcurrencyLimitInterceptor} and {@link RequestTimeoutInterceptor} that allows it handle
+ * client requests efficiently. The interceptors are run by the
+ * {@link MultiplicationServiceInterceptorProxy} generated from {@link MultiplicationHandler}.
+ * Multiplying is cheap, so requests are processed on the selector thread, without the handoff to
+ * an executor, as long as their p99 service time stays under
+ * {@link #MAX_INLINE_SERVICE_TIME_MICROS}. Past that, they are processed on virtual threads.
+ * Once {@link #MAX_CONCURRENT_REQUESTS} are processed, requests wait for a thread in a bounded
+ * queue per {@link Options#clientId}, served in turn, so a client sending too many requests
+ * only delays its own requests; requests that exceeded their
+ * {@link Options#timeout} while queued are rejected by {@link RequestTimeoutInterceptor}. The
+ * number of requests in flight is limited by {@link ConcurrencyLimitInterceptor} to a limit that
+ * follows the latency of the handler, instead of sizing a thread pool up front. Products are
+ * cached, so repeated requests are answered without reaching the handler. The latency
+ * percentiles recorded by {@link MetricsInterceptor} are printed every minute.
  *
  * @author uday
  */
 public class Server {
 
+    private static final int MAX_QUEUED_REQUESTS = 1000;
+    private static final int MAX_QUEUED_REQUESTS_PER_CLIENT = 100;
+    private static final int INITIAL_CONCURRENCY_LIMIT = 20;
+    private static final int MAX_CONCURRENT_REQUESTS = 1000;
+    private static final long METRICS_REPORT_PERIOD_SECONDS = 60;
+    private static final int MAX_CACHED_PRODUCTS = 10000;
+    private static final long CACHED_PRODUCT_TTL_SECONDS = 60;
+    private static final long MAX_INLINE_SERVICE_TIME_MICROS = 500;
+    private static final TProtocolFactory PROTOCOL_FACTORY = new TBinaryProtocol.Factory();
+
     public static void main(String[] args) {
         new Server().runServer();
     }
 
+    private final MetricsInterceptor metricsInterceptor = new MetricsInterceptor();
+
     protected MultiplicationService.AsyncIface getHandler() {
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10,
-                TimeUnit.MINUTES, new LinkedBlockingQueue<>());
-        InvocationHandler handler = new ThriftMiddlewareProxy
-                .Builder<>(new MultiplicationHandler(), executor)
-                .addRequestCreationInterceptor(new RequestPermitInterceptor())
+        ThriftMiddlewareProxy<MultiplicationHandler> middleware = new ThriftMiddlewareProxy
+                .Builder<>(new MultiplicationHandler())
+                .useVirtualThreads(MAX_CONCURRENT_REQUESTS, MAX_QUEUED_REQUESTS)
+                .adaptiveInline("multiply", MAX_INLINE_SERVICE_TIME_MICROS, TimeUnit.MICROSECONDS)
+                .fairQueuing(MAX_QUEUED_REQUESTS, MAX_QUEUED_REQUESTS_PER_CLIENT,
+                        Server::getClientId, clientId -> 1)
+                .addRequestCreationInterceptor(metricsInterceptor)
+                .addRequestCreationInterceptor(new ResponseCacheInterceptor.Builder()
+                        .cache("multiply", MAX_CACHED_PRODUCTS, CACHED_PRODUCT_TTL_SECONDS,
+                                TimeUnit.SECONDS)
+                        .ignoreField(Options.class, Options._Fields.TIMEOUT)
+                        .leaderFailure(
+                                e -> e == RequestTimeoutInterceptor.REQUEST_TIMEOUT_EXCEPTION)
+                        .build())
+                .addRequestCreationInterceptor(new CircuitBreakerInterceptor(
+                        () -> new CircuitBreaker.Builder().build(), null,
+                        e -> e != RequestTimeoutInterceptor.REQUEST_TIMEOUT_EXCEPTION))
+                .addRequestCreationInterceptor(new ConcurrencyLimitInterceptor(
+                        new AdaptiveConcurrencyLimiter(INITIAL_CONCURRENCY_LIMIT, 1,
+                                MAX_CONCURRENT_REQUESTS)))
                 .addRequestPreProcessInterceptor(new RequestTimeoutInterceptor())
                 .build();
-        return ThriftMiddlewareProxy
-                .wrap(MultiplicationService.AsyncIface.class, handler);
+        return new MultiplicationServiceInterceptorProxy(middleware);
+    }
+
+    /**
+     * Extracts the {@link Options#clientId} that requests are queued for.
+     */
+    protected static Object getClientId(RequestContext request) {
+        Options options = request.getArgument(Options.class);
+        if (options == null || !options.isSetClientId()) {
+            return TenantExtractor.DEFAULT_TENANT;
+        }
+        return options.getClientId();
     }
 
     protected void runServer() {
         MultiplicationService.AsyncIface handler = getHandler();
-        MultiplicationService.AsyncProcessor<MultiplicationService.AsyncIface> processor =
-                new MultiplicationService.AsyncProcessor<>(handler);
+        ScheduledExecutorService metricsReporter = Executors.newSingleThreadScheduledExecutor();
+        metricsReporter.scheduleAtFixedRate(this::reportMetrics, METRICS_REPORT_PERIOD_SECONDS,
+                METRICS_REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        TProcessor processor = new InterceptingAsyncProcessor<>(
+                new MultiplicationService.AsyncProcessor<>(handler), PROTOCOL_FACTORY,
+                Collections.singletonList(new RequestPermitInterceptor()));
         Runnable serverRunnable = () -> createServerRunnable(processor);
         new Thread(serverRunnable).start();
     }
 
-    protected void createServerRunnable(
-            MultiplicationService.AsyncProcessor<MultiplicationService.AsyncIface> processor) {
+    /**
+     * Prints the latency percentiles of every method and phase.
+     */
+    protected void reportMetrics() {
+        for (MethodMetrics methodMetrics : metricsInterceptor.getMethodMetrics()) {
+            System.out.println(methodMetrics);
+        }
+    }
+
+    protected void createServerRunnable(TProcessor processor) {
         try {
             TNonblockingServerSocket serverTransport = new TNonblockingServerSocket(9090);
             TNonblockingServer.Args args = new TNonblockingServer.Args(serverTransport)
                     .transportFactory(new TFramedTransport.Factory())
-                    .protocolFactory(new TBinaryProtocol.Factory())
+                    .protocolFactory(PROTOCOL_FACTORY)
                     .processor(processor);
             TServer server = new TNonblockingServer(args);
 
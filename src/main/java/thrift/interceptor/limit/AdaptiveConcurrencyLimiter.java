@@ -0,0 +1,162 @@
+package thrift.interceptor.limit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests in flight to a limit that follows the capacity of the server,
+ * estimated from the round-trip time of the requests like TCP Vegas.
+ *
+ * The lowest round-trip time observed is taken as the time of a request that didn't queue. The
+ * ratio between it and the round-trip time of each completed request estimates how many of the
+ * requests in flight are queued: the limit grows while that queue stays short and shrinks when
+ * it grows long or when requests are shed. The lowest round-trip time is re-measured every
+ * {@value #PROBE_MULTIPLIER} times the limit samples, so the limit also follows the server when
+ * the handler or its dependencies get faster or slower.
+ *
+ * {@link #tryAcquire()} doesn't lock. Releasing a permit updates the limit under a lock.
+ *
+ * @author uday
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // guarded by this.
+    private double estimatedLimit;
+    private long minRttNanos;
+    private int samplesUntilProbe;
+
+    /**
+     * @param initialLimit
+     *         limit until enough requests completed to estimate it.
+     * @param minLimit
+     *         lowest limit, at least 1.
+     * @param maxLimit
+     *         highest limit.
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits: " + minLimit + " to " + maxLimit);
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between " + minLimit
+                    + " and " + maxLimit + ": " + initialLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.samplesUntilProbe = nextProbe(initialLimit);
+    }
+
+    /**
+     * Acquires a permit if fewer than {@link #getLimit()} requests are in flight. An acquired
+     * permit must be released once with {@link #release(long)}, {@link #releaseDropped()} or
+     * {@link #releaseIgnored()}.
+     *
+     * @return true if the permit was acquired.
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the permit of a request that completed.
+     *
+     * @param rttNanos
+     *         time between acquiring the permit and the completion of the request.
+     */
+    public void release(long rttNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        onSample(rttNanos, inFlightBefore, false);
+    }
+
+    /**
+     * Releases the permit of a request that was shed because the server is overloaded.
+     */
+    public void releaseDropped() {
+        int inFlightBefore = inFlight.getAndDecrement();
+        onSample(0, inFlightBefore, true);
+    }
+
+    /**
+     * Releases the permit of a request whose round-trip time says nothing about the capacity of
+     * the server, e.g. one rejected before it was queued.
+     */
+    public void releaseIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the lowest round-trip time observed since the last probe, or 0 before the first
+     *         sample.
+     */
+    public synchronized long getMinRttNanos() {
+        return minRttNanos;
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightBefore, boolean dropped) {
+        double current = estimatedLimit;
+        double step = Math.max(1, Math.log10(current));
+        double next;
+        if (dropped) {
+            next = current - step;
+        } else {
+            if (rttNanos <= 0) {
+                return;
+            }
+            if (--samplesUntilProbe <= 0) {
+                // forget the lowest round-trip time, the next samples measure it again.
+                samplesUntilProbe = nextProbe(limit);
+                minRttNanos = rttNanos;
+                return;
+            }
+            if (minRttNanos == 0 || rttNanos < minRttNanos) {
+                minRttNanos = rttNanos;
+                return;
+            }
+            if (inFlightBefore * 2 < current) {
+                // too few requests in flight to tell whether the limit is too low.
+                return;
+            }
+            double queued = Math.ceil(current * (1 - (double) minRttNanos / rttNanos));
+            if (queued <= step) {
+                next = current + 6 * step;
+            } else if (queued < 3 * step) {
+                next = current + step;
+            } else if (queued > 6 * step) {
+                next = current - step;
+            } else {
+                return;
+            }
+        }
+        estimatedLimit = Math.min(maxLimit, Math.max(minLimit, next));
+        limit = (int) estimatedLimit;
+    }
+
+    private static int nextProbe(int limit) {
+        return PROBE_MULTIPLIER * limit + ThreadLocalRandom.current().nextInt(limit + 1);
+    }
+}
@@ -0,0 +1,74 @@
+package thrift.interceptor.limit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+import thrift.interceptor.scheduling.OverloadException;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * A request creation interceptor rejecting requests once {@link AdaptiveConcurrencyLimiter}
+ * has as many requests in flight as its limit, with
+ * {@link OverloadException.Reason#CONCURRENCY_LIMIT}.
+ *
+ * The permit of an admitted request is released when the request completes, by the listener
+ * returned for it: requests processed by the handler feed their round-trip time to the limiter,
+ * requests shed while queued lower the limit, and requests rejected before being queued are
+ * ignored. Add it after the request creation interceptors that reject requests on their own,
+ * e.g. rate limits, so those requests don't take permits.
+ *
+ * @author uday
+ */
+public class ConcurrencyLimitInterceptor implements RequestInterceptor {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        if (!limiter.tryAcquire()) {
+            throw OverloadException.Reason.CONCURRENCY_LIMIT.getException();
+        }
+        return new AsyncMethodCallbackListener<>(new Permit(context), DirectExecutor.INSTANCE);
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    private class Permit implements AsyncMethodCallback<Object> {
+
+        private final RequestContext context;
+        private final long acquiredNanos = System.nanoTime();
+
+        Permit(RequestContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            limiter.release(System.nanoTime() - acquiredNanos);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            if (exception instanceof OverloadException
+                    || exception instanceof DeadlineExceededException) {
+                limiter.releaseDropped();
+            } else if (context.getDequeuedNanos() == 0) {
+                limiter.releaseIgnored();
+            } else {
+                limiter.release(System.nanoTime() - acquiredNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package thrift.interceptor.limit;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket per key, e.g. per client, allowing {@code permitsPerSecond} requests per second
+ * with bursts of up to {@code burst} requests.
+ *
+ * Each bucket is a single {@code long} updated with compare-and-set, following the generic cell
+ * rate algorithm (GCRA): it holds the time at which the bucket would be full again, so tokens are
+ * refilled lazily from {@link System#nanoTime()} when a permit is requested, without a background
+ * thread. Buckets are spread over stripes, each a {@link ConcurrentHashMap}, or for {@code int}
+ * keys an open-addressing table, so they are looked up without boxing the key. Whenever a bucket
+ * is created on a stripe, and about once every {@value #SWEEP_PERIOD} permit requests on it, the
+ * next {@value #SWEEP_BATCH} buckets of the stripe are checked and those that stayed full for
+ * {@code idleTimeout} are evicted, so keys that stop sending requests don't use memory. A
+ * request never pays for a sweep of the whole stripe.
+ *
+ * {@link #tryAcquire(int)}, and {@link #tryAcquire(Object)} given an existing key object, don't
+ * lock and don't allocate once the bucket of the key exists, so they can be called on the
+ * selector thread.
+ *
+ * @author uday
+ */
+public class RateLimiter {
+
+    private static final int SWEEP_PERIOD = 64;
+    private static final int SWEEP_BATCH = 8;
+    private static final int INITIAL_INT_TABLE_SIZE = 16;
+    // multiplier of fibonacci hashing, which spreads int keys over the slots of a table.
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final int STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    private final long emissionIntervalNanos;
+    // how far ahead of now the bucket may run out of tokens, i.e. the burst minus one request.
+    private final long burstToleranceNanos;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final IntStripe[] intStripes = new IntStripe[STRIPES];
+
+    /**
+     * @param permitsPerSecond
+     *         sustained rate of permits per key.
+     * @param burst
+     *         number of permits a key that was idle can acquire at once.
+     * @param idleTimeout
+     *         how long a bucket stays full before it is evicted.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, long idleTimeout, TimeUnit unit) {
+        this(permitsPerSecond, burst, idleTimeout, unit, System::nanoTime);
+    }
+
+    /**
+     * @param clock
+     *         monotonic time in nanoseconds.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, long idleTimeout, TimeUnit unit,
+                       LongSupplier clock) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: "
+                    + permitsPerSecond);
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive: " + burst);
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1)
+                / permitsPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+            intStripes[i] = new IntStripe();
+        }
+    }
+
+    /**
+     * Acquires a permit for key if its bucket has a token left. An {@link Integer} key shares its
+     * bucket with the same {@code int} key, see {@link #tryAcquire(int)}.
+     *
+     * @return true if the permit was acquired.
+     */
+    public boolean tryAcquire(Object key) {
+        if (key instanceof Integer) {
+            return tryAcquire(((Integer) key).intValue());
+        }
+        Stripe stripe = stripes[spread(key.hashCode()) & (STRIPES - 1)];
+        long now = clock.getAsLong();
+        Bucket bucket = stripe.buckets.get(key);
+        if (bucket == null) {
+            bucket = stripe.buckets.computeIfAbsent(key, k -> new Bucket(now));
+            stripe.evictIdleBuckets(now);
+        } else if (ThreadLocalRandom.current().nextInt(SWEEP_PERIOD) == 0) {
+            // sampled rather than counted, so threads don't contend on a shared counter.
+            stripe.evictIdleBuckets(now);
+        }
+        return tryAcquire(bucket, now);
+    }
+
+    /**
+     * Acquires a permit for key if its bucket has a token left, without boxing the key.
+     *
+     * @return true if the permit was acquired.
+     */
+    public boolean tryAcquire(int key) {
+        IntStripe stripe = intStripes[spread(key) & (STRIPES - 1)];
+        long now = clock.getAsLong();
+        Bucket bucket = stripe.get(key);
+        if (bucket == null) {
+            bucket = stripe.getOrCreate(key, now);
+        } else if (ThreadLocalRandom.current().nextInt(SWEEP_PERIOD) == 0) {
+            stripe.tryEvictIdleBuckets(now);
+        }
+        return tryAcquire(bucket, now);
+    }
+
+    private boolean tryAcquire(Bucket bucket, long now) {
+        for (;;) {
+            long fullAt = bucket.fullAtNanos;
+            long base = fullAt - now > 0 ? fullAt : now;
+            if (base - now > burstToleranceNanos) {
+                return false;
+            }
+            if (Bucket.FULL_AT.compareAndSet(bucket, fullAt, base + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return number of keys with a bucket.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.buckets.size();
+        }
+        for (IntStripe stripe : intStripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private class Stripe {
+
+        private final ConcurrentHashMap<Object, Bucket> buckets = new ConcurrentHashMap<>();
+        private final ReentrantLock sweepLock = new ReentrantLock();
+        // where the last sweep stopped, guarded by sweepLock.
+        private Iterator<Bucket> sweep;
+
+        /**
+         * Checks the next SWEEP_BATCH buckets, unless another thread is sweeping.
+         */
+        void evictIdleBuckets(long now) {
+            if (!sweepLock.tryLock()) {
+                return;
+            }
+            try {
+                for (int i = 0; i < SWEEP_BATCH; i++) {
+                    if (sweep == null || !sweep.hasNext()) {
+                        sweep = buckets.values().iterator();
+                        if (!sweep.hasNext()) {
+                            return;
+                        }
+                    }
+                    if (now - sweep.next().fullAtNanos > idleTimeoutNanos) {
+                        sweep.remove();
+                    }
+                }
+            } finally {
+                sweepLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The buckets of {@code int} keys on a stripe, in an open-addressing table with linear
+     * probing. Buckets are looked up without locking, while they are only added and removed under
+     * the lock of the stripe, the table being replaced when it grows. A lookup racing with a
+     * removal may miss a bucket that was moved back, so a miss is checked again under the lock.
+     */
+    private class IntStripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // at most half full, so probing always ends on an empty slot.
+        private volatile AtomicReferenceArray<IntBucket> table =
+                new AtomicReferenceArray<>(INITIAL_INT_TABLE_SIZE);
+        // guarded by lock.
+        private int size;
+        // slot where the last sweep stopped, guarded by lock.
+        private int sweep;
+
+        IntBucket get(int key) {
+            AtomicReferenceArray<IntBucket> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                IntBucket bucket = table.get(i);
+                if (bucket == null || bucket.key == key) {
+                    return bucket;
+                }
+            }
+        }
+
+        IntBucket getOrCreate(int key, long now) {
+            lock.lock();
+            try {
+                IntBucket bucket = get(key);
+                if (bucket == null) {
+                    bucket = new IntBucket(key, now);
+                    if (++size * 2 > table.length()) {
+                        grow();
+                    }
+                    insert(table, bucket);
+                    evictIdleBuckets(now);
+                }
+                return bucket;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Checks the next SWEEP_BATCH buckets, unless another thread holds the lock.
+         */
+        void tryEvictIdleBuckets(long now) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                evictIdleBuckets(now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // lock held.
+        private void evictIdleBuckets(long now) {
+            AtomicReferenceArray<IntBucket> table = this.table;
+            int mask = table.length() - 1;
+            int checked = 0;
+            for (int slots = 0; slots < table.length() && checked < SWEEP_BATCH; slots++) {
+                Bucket bucket = table.get(sweep);
+                if (bucket != null) {
+                    checked++;
+                    if (now - bucket.fullAtNanos > idleTimeoutNanos) {
+                        // the slot may be refilled by a later bucket, checked next.
+                        remove(table, sweep);
+                        continue;
+                    }
+                }
+                sweep = (sweep + 1) & mask;
+            }
+        }
+
+        // lock held.
+        private void grow() {
+            AtomicReferenceArray<IntBucket> table = this.table;
+            AtomicReferenceArray<IntBucket> grown = new AtomicReferenceArray<>(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                IntBucket bucket = table.get(i);
+                if (bucket != null) {
+                    insert(grown, bucket);
+                }
+            }
+            sweep = 0;
+            this.table = grown;
+        }
+
+        // lock held, the key being absent.
+        private void insert(AtomicReferenceArray<IntBucket> table, IntBucket bucket) {
+            int mask = table.length() - 1;
+            int i = slot(bucket.key, mask);
+            while (table.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            table.set(i, bucket);
+        }
+
+        /**
+         * Empties a slot, moving back the later buckets of its cluster that would no longer be
+         * found past it, so no tombstones are needed. Lock held.
+         */
+        private void remove(AtomicReferenceArray<IntBucket> table, int i) {
+            int mask = table.length() - 1;
+            for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+                IntBucket bucket = table.get(j);
+                if (bucket == null) {
+                    break;
+                }
+                int home = slot(bucket.key, mask);
+                // the bucket stays if its home slot lies cyclically within (i, j].
+                boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+                if (!stays) {
+                    table.set(i, bucket);
+                    i = j;
+                }
+            }
+            table.set(i, null);
+            size--;
+        }
+    }
+
+    private static int slot(int key, int mask) {
+        // the top bits of the product, as the low bits of the key select the stripe.
+        return (key * GOLDEN_RATIO) >>> Integer.numberOfLeadingZeros(mask);
+    }
+
+    private static class Bucket {
+
+        private static final AtomicLongFieldUpdater<Bucket> FULL_AT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "fullAtNanos");
+
+        private volatile long fullAtNanos;
+
+        Bucket(long now) {
+            this.fullAtNanos = now;
+        }
+    }
+
+    private static final class IntBucket extends Bucket {
+
+        private final int key;
+
+        IntBucket(int key, long now) {
+            super(now);
+            this.key = key;
+        }
+    }
+}
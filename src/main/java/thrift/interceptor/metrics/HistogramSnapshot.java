@@ -0,0 +1,103 @@
+package thrift.interceptor.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The counts of a {@link LatencyHistogram} at some point in time.
+ *
+ * @author uday
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    HistogramSnapshot(long[] counts) {
+        this.counts = counts;
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile
+     *         between 0 and 100, e.g. 99.99.
+     *
+     * @return the duration in nanoseconds that {@code percentile} percent of the samples didn't
+     *         exceed, or 0 without samples.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: "
+                    + percentile);
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] != 0) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of samples longer than nanos, within the precision of the histogram.
+     */
+    public long getCountAbove(long nanos) {
+        long countAbove = 0;
+        for (int i = counts.length - 1; i >= 0 && LatencyHistogram.highestValueOf(i) > nanos;
+                i--) {
+            countAbove += counts[i];
+        }
+        return countAbove;
+    }
+
+    /**
+     * @return the largest duration in nanoseconds, within the precision of the histogram.
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, within the precision of the histogram.
+     */
+    public double getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) counts[i] * LatencyHistogram.highestValueOf(i);
+        }
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count
+                + " p50=" + micros(getValueAtPercentile(50))
+                + " p90=" + micros(getValueAtPercentile(90))
+                + " p99=" + micros(getValueAtPercentile(99))
+                + " p99.9=" + micros(getValueAtPercentile(99.9))
+                + " p99.99=" + micros(getValueAtPercentile(99.99))
+                + " max=" + micros(getMax());
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
@@ -0,0 +1,99 @@
+package thrift.interceptor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets, like HdrHistogram: every power
+ * of two is split in {@value #SUB_BUCKETS} linear buckets, so a recorded value is reported within
+ * about 3% of its actual value, from 1 nanosecond to about 18 minutes. Longer durations are
+ * recorded in the last bucket.
+ *
+ * Recording doesn't lock or allocate. Samples go to one of several stripes of counters, picked by
+ * thread, so threads recording at the same time rarely update the same counters. Stripes are used
+ * rather than a histogram per thread because with virtual threads every request runs on a new
+ * thread. Reading merges the stripes without stopping the threads recording, see
+ * {@link #snapshot()}.
+ *
+ * @author uday
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+    private static final int STRIPES = Math.min(16,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * @param nanos
+     *         a duration, negative durations are recorded as 0.
+     */
+    public void record(long nanos) {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+        stripes[stripe].incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * @return the counts recorded so far. Samples recorded while the snapshot is taken may or may
+     *         not be part of it.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new HistogramSnapshot(counts);
+    }
+
+    /**
+     * @return the counts recorded since the last reset, and resets them. Every sample is part of
+     *         exactly one snapshot.
+     */
+    public HistogramSnapshot snapshotAndReset() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                if (stripe.get(i) != 0) {
+                    counts[i] += stripe.getAndSet(i, 0);
+                }
+            }
+        }
+        return new HistogramSnapshot(counts);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit >= MAX_VALUE_BITS) {
+            return BUCKETS - 1;
+        }
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) | (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the highest value recorded in bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package thrift.interceptor.metrics;
+
+import java.lang.reflect.Method;
+
+/**
+ * Latency histograms of the requests of a method, one per {@link Phase}.
+ *
+ * @author uday
+ */
+public class MethodMetrics {
+
+    /**
+     * The phases a request goes through in {@link thrift.interceptor.ThriftMiddlewareProxy}.
+     */
+    public enum Phase {
+        /**
+         * Running the request creation interceptors.
+         */
+        CREATION,
+        /**
+         * Waiting for the executor, in the request queue if there is one.
+         */
+        QUEUE,
+        /**
+         * Running the request pre-process interceptors.
+         */
+        PRE_PROCESS,
+        /**
+         * From calling the handler to the completion of the request.
+         */
+        HANDLER,
+        /**
+         * From entering the middleware to the completion of the request.
+         */
+        TOTAL
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Method method;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+    MethodMetrics(Method method) {
+        this.method = method;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(method.getName());
+        for (Phase phase : PHASES) {
+            sb.append("\n  ").append(phase).append(": ").append(getHistogram(phase).snapshot());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package thrift.interceptor.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.RequestContext;
+import thrift.interceptor.RequestInterceptor;
+import thrift.interceptor.utils.DirectExecutor;
+
+/**
+ * A request creation interceptor recording how long each request spends in every
+ * {@link MethodMetrics.Phase}, in {@link LatencyHistogram}s per method.
+ *
+ * The durations are taken from the timestamps of the {@link RequestContext} when the request
+ * completes. A request that completes before reaching a phase, e.g. one shed while queued, is
+ * only recorded in the phases it went through and in {@link MethodMetrics.Phase#TOTAL}. Add it
+ * as the first request creation interceptor, so requests rejected by the others are recorded
+ * too.
+ *
+ * @author uday
+ */
+public class MetricsInterceptor implements RequestInterceptor {
+
+    private final ConcurrentHashMap<Method, MethodMetrics> methodMetrics =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public AsyncMethodCallbackListener<Object> intercept(RequestContext context)
+            throws TException {
+        MethodMetrics metrics = getMethodMetrics(context.getMethod());
+        return new AsyncMethodCallbackListener<>(new Recorder(metrics, context),
+                DirectExecutor.INSTANCE);
+    }
+
+    public MethodMetrics getMethodMetrics(Method method) {
+        MethodMetrics metrics = methodMetrics.get(method);
+        if (metrics == null) {
+            metrics = methodMetrics.computeIfAbsent(method, MethodMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of the methods that received requests.
+     */
+    public Collection<MethodMetrics> getMethodMetrics() {
+        return Collections.unmodifiableCollection(methodMetrics.values());
+    }
+
+    private static class Recorder implements AsyncMethodCallback<Object> {
+
+        private final MethodMetrics metrics;
+        private final RequestContext context;
+
+        Recorder(MethodMetrics metrics, RequestContext context) {
+            this.metrics = metrics;
+            this.context = context;
+        }
+
+        @Override
+        public void onComplete(Object response) {
+            record();
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            record();
+        }
+
+        private void record() {
+            long completedNanos = System.nanoTime();
+            long createdNanos = context.getCreatedNanos();
+            long enqueuedNanos = context.getEnqueuedNanos();
+            long dequeuedNanos = context.getDequeuedNanos();
+            long handlerStartedNanos = context.getHandlerStartedNanos();
+            metrics.record(MethodMetrics.Phase.TOTAL, completedNanos - createdNanos);
+            if (enqueuedNanos == 0) {
+                metrics.record(MethodMetrics.Phase.CREATION, completedNanos - createdNanos);
+                return;
+            }
+            metrics.record(MethodMetrics.Phase.CREATION, enqueuedNanos - createdNanos);
+            if (dequeuedNanos == 0) {
+                return;
+            }
+            metrics.record(MethodMetrics.Phase.QUEUE, dequeuedNanos - enqueuedNanos);
+            if (handlerStartedNanos == 0) {
+                metrics.record(MethodMetrics.Phase.PRE_PROCESS, completedNanos - dequeuedNanos);
+                return;
+            }
+            metrics.record(MethodMetrics.Phase.PRE_PROCESS, handlerStartedNanos - dequeuedNanos);
+            metrics.record(MethodMetrics.Phase.HANDLER, completedNanos - handlerStartedNanos);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package thrift.interceptor.processor;
+
+import java.util.List;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TBaseAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.server.AbstractNonblockingServer;
+
+/**
+ * Wraps a {@link TBaseAsyncProcessor} to run {@link MessageInterceptor}s on each request before
+ * its arguments are deserialized.
+ *
+ * The interceptors see the method name and seqid of the request and can peek single argument
+ * fields, e.g. a client id, through {@link PeekedMessage}. A rejected request is answered with
+ * the {@link TApplicationException} returned by the interceptor, and is never deserialized nor
+ * passed to the processor, so rejecting it costs a fraction of processing it. This is the place
+ * to turn away floods of requests; the {@link thrift.interceptor.RequestInterceptor}s of
+ * {@link thrift.interceptor.ThriftMiddlewareProxy} run after the arguments are deserialized.
+ *
+ * Peeking requires the input transport of the server to buffer whole requests, which the
+ * nonblocking servers do. Requests that can't be peeked, or whose header can't be read, are
+ * passed to the processor as they are.
+ *
+ * @author uday
+ */
+public class InterceptingAsyncProcessor<I> implements TAsyncProcessor, TProcessor {
+
+    private final TBaseAsyncProcessor<I> processor;
+    private final MessageInterceptor[] interceptors;
+    private final ThreadLocal<PeekedMessage> peekedMessages;
+
+    /**
+     * @param protocolFactory
+     *         the input protocol of the server, used to peek at the requests.
+     */
+    public InterceptingAsyncProcessor(TBaseAsyncProcessor<I> processor,
+                                      TProtocolFactory protocolFactory,
+                                      List<MessageInterceptor> interceptors) {
+        this.processor = processor;
+        this.interceptors = interceptors.toArray(new MessageInterceptor[0]);
+        this.peekedMessages = ThreadLocal.withInitial(() -> new PeekedMessage(protocolFactory));
+    }
+
+    @Override
+    public boolean process(AbstractNonblockingServer.AsyncFrameBuffer frameBuffer)
+            throws TException {
+        PeekedMessage message = peekedMessages.get();
+        TApplicationException rejection = null;
+        String methodName = null;
+        int seqId = 0;
+        boolean oneway = false;
+        try {
+            // unknown methods are left to the processor, which replies with an error.
+            if (message.reset(frameBuffer.getInputProtocol().getTransport())
+                    && processor.getProcessMapView().containsKey(message.getMethodName())) {
+                rejection = intercept(message);
+            }
+            if (rejection != null) {
+                methodName = message.getMethodName();
+                seqId = message.getSeqId();
+                oneway = message.getType() == TMessageType.ONEWAY;
+                message.consume();
+            }
+        } catch (TException e) {
+            rejection = null;
+        } finally {
+            message.clear();
+        }
+        if (rejection == null) {
+            return processor.process(frameBuffer);
+        }
+        if (!oneway) {
+            TProtocol out = frameBuffer.getOutputProtocol();
+            out.writeMessageBegin(new TMessage(methodName, TMessageType.EXCEPTION, seqId));
+            rejection.write(out);
+            out.writeMessageEnd();
+            out.getTransport().flush();
+        }
+        frameBuffer.responseReady();
+        return true;
+    }
+
+    /**
+     * Synchronous processing isn't intercepted, it is delegated to the processor.
+     */
+    @Override
+    public boolean process(TProtocol in, TProtocol out) throws TException {
+        return processor.process(in, out);
+    }
+
+    private TApplicationException intercept(PeekedMessage message) throws TException {
+        byte type = message.getType();
+        if (type != TMessageType.CALL && type != TMessageType.ONEWAY) {
+            return null;
+        }
+        for (MessageInterceptor interceptor : interceptors) {
+            TApplicationException rejection = interceptor.intercept(message);
+            if (rejection != null) {
+                return rejection;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+package thrift.interceptor.processor;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+
+/**
+ * Intercepts a Thrift request before its arguments are deserialized, see
+ * {@link InterceptingAsyncProcessor}.
+ *
+ * @author uday
+ */
+@FunctionalInterface
+public interface MessageInterceptor {
+
+    /**
+     * Decides whether a request is processed, from its message header and from the argument
+     * fields it peeks. Called on the thread reading the request, usually the selector thread, so
+     * it must not block.
+     *
+     * @return null to process the request, or the exception to reply with instead. The exception
+     *         can be shared between requests.
+     * @throws TException
+     *         if the message can't be read; the request is then left to the processor.
+     */
+    TApplicationException intercept(PeekedMessage message) throws TException;
+}
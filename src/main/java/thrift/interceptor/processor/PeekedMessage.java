@@ -0,0 +1,169 @@
+package thrift.interceptor.processor;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * The header of a Thrift request and access to single fields of its arguments, read from the
+ * buffered request without consuming it.
+ *
+ * Fields are found by their path of field ids, starting from the arguments struct of the method:
+ * e.g. {@code {3, 2}} is field 2 of the struct passed as argument 3. Every lookup scans the
+ * arguments from the start and skips the fields that aren't on the path, without creating the
+ * argument objects. Pass a constant array as path to avoid allocating one per lookup.
+ *
+ * Instances are reused for the requests read by a thread and must not be kept.
+ *
+ * @author uday
+ */
+public final class PeekedMessage {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final TMemoryInputTransport transport = new TMemoryInputTransport();
+    private final TProtocol protocol;
+
+    private TTransport requestTransport;
+    private byte[] buffer;
+    private int argumentsOffset;
+    private int argumentsLength;
+    private String methodName;
+    private byte type;
+    private int seqId;
+
+    PeekedMessage(TProtocolFactory protocolFactory) {
+        this.protocol = protocolFactory.getProtocol(transport);
+    }
+
+    /**
+     * Points this message at the request buffered by the transport of a frame buffer, and reads
+     * its header.
+     *
+     * @return false if the transport doesn't buffer the request.
+     */
+    boolean reset(TTransport requestTransport) throws TException {
+        if (requestTransport.getBytesRemainingInBuffer() <= 0) {
+            // a TFramedTransport reads its frame into its buffer on the first read.
+            try {
+                requestTransport.read(EMPTY, 0, 0);
+            } catch (TTransportException e) {
+                return false;
+            }
+        }
+        buffer = requestTransport.getBuffer();
+        if (buffer == null || requestTransport.getBytesRemainingInBuffer() <= 0) {
+            return false;
+        }
+        this.requestTransport = requestTransport;
+        int offset = requestTransport.getBufferPosition();
+        int length = requestTransport.getBytesRemainingInBuffer();
+        transport.reset(buffer, offset, length);
+        protocol.reset();
+        TMessage message = protocol.readMessageBegin();
+        methodName = message.name;
+        type = message.type;
+        seqId = message.seqid;
+        argumentsOffset = transport.getBufferPosition();
+        argumentsLength = offset + length - argumentsOffset;
+        return true;
+    }
+
+    /**
+     * Consumes the request from the transport it was read from, so that it isn't read as part of
+     * the next request.
+     */
+    void consume() {
+        requestTransport.consumeBuffer(requestTransport.getBytesRemainingInBuffer());
+    }
+
+    void clear() {
+        requestTransport = null;
+        buffer = null;
+        transport.clear();
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return the {@link org.apache.thrift.protocol.TMessageType} of the message.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    public int getSeqId() {
+        return seqId;
+    }
+
+    /**
+     * @return true if the arguments have the field.
+     */
+    public boolean hasField(short... path) throws TException {
+        return seek(path) != TType.STOP;
+    }
+
+    /**
+     * @return the value of an integer field (i8, i16, i32 or i64), or defaultValue if the
+     *         arguments don't have it.
+     */
+    public long getInteger(long defaultValue, short... path) throws TException {
+        switch (seek(path)) {
+            case TType.BYTE:
+                return protocol.readByte();
+            case TType.I16:
+                return protocol.readI16();
+            case TType.I32:
+                return protocol.readI32();
+            case TType.I64:
+                return protocol.readI64();
+            default:
+                return defaultValue;
+        }
+    }
+
+    /**
+     * @return the value of a string field, or defaultValue if the arguments don't have it.
+     */
+    public String getString(String defaultValue, short... path) throws TException {
+        return seek(path) == TType.STRING ? protocol.readString() : defaultValue;
+    }
+
+    /**
+     * Positions the protocol at the value of the field on path.
+     *
+     * @return the type of the field, or {@link TType#STOP} if there is no such field.
+     */
+    private byte seek(short[] path) throws TException {
+        transport.reset(buffer, argumentsOffset, argumentsLength);
+        protocol.reset();
+        for (int depth = 0; depth < path.length; depth++) {
+            protocol.readStructBegin();
+            TField field;
+            while ((field = protocol.readFieldBegin()).type != TType.STOP
+                    && field.id != path[depth]) {
+                TProtocolUtil.skip(protocol, field.type);
+                protocol.readFieldEnd();
+            }
+            if (field.type == TType.STOP) {
+                return TType.STOP;
+            }
+            if (depth == path.length - 1) {
+                return field.type;
+            }
+            if (field.type != TType.STRUCT) {
+                return TType.STOP;
+            }
+        }
+        return TType.STOP;
+    }
+}
@@ -0,0 +1,164 @@
+package thrift.interceptor.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * A {@link RequestQueue} holding at most {@code capacity} requests, shedding requests according
+ * to a {@link SheddingPolicy} once full.
+ *
+ * @author uday
+ */
+public class BoundedRequestQueue implements RequestQueue {
+
+    private final int capacity;
+    private final SheddingPolicy policy;
+    private final ToIntFunction<RequestContext> priority;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // requests in arrival order, for REJECT_NEWEST and DROP_OLDEST.
+    private final ArrayDeque<RequestContext> requests;
+    // requests in arrival order per priority, for REJECT_BY_PRIORITY.
+    private final TreeMap<Integer, ArrayDeque<RequestContext>> requestsByPriority;
+    private int size;
+
+    /**
+     * @param capacity
+     *         maximum number of queued requests.
+     * @param policy
+     *         {@link SheddingPolicy#REJECT_NEWEST} or {@link SheddingPolicy#DROP_OLDEST}. Use
+     *         {@link #BoundedRequestQueue(int, ToIntFunction)} for
+     *         {@link SheddingPolicy#REJECT_BY_PRIORITY}.
+     */
+    public BoundedRequestQueue(int capacity, SheddingPolicy policy) {
+        this(capacity, policy, null);
+        if (policy == SheddingPolicy.REJECT_BY_PRIORITY) {
+            throw new IllegalArgumentException("REJECT_BY_PRIORITY requires a priority function");
+        }
+    }
+
+    /**
+     * Creates a queue with the {@link SheddingPolicy#REJECT_BY_PRIORITY} policy.
+     *
+     * @param capacity
+     *         maximum number of queued requests.
+     * @param priority
+     *         extracts the priority of a request, higher values being more important. It is
+     *         called once per request, on the selector thread.
+     */
+    public BoundedRequestQueue(int capacity, ToIntFunction<RequestContext> priority) {
+        this(capacity, SheddingPolicy.REJECT_BY_PRIORITY, priority);
+    }
+
+    private BoundedRequestQueue(int capacity, SheddingPolicy policy,
+                                ToIntFunction<RequestContext> priority) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.priority = priority;
+        if (policy == SheddingPolicy.REJECT_BY_PRIORITY) {
+            this.requests = null;
+            this.requestsByPriority = new TreeMap<>();
+        } else {
+            this.requests = new ArrayDeque<>();
+            this.requestsByPriority = null;
+        }
+    }
+
+    @Override
+    public RequestContext offer(RequestContext request) {
+        if (requestsByPriority != null) {
+            return offerByPriority(request, priority.applyAsInt(request));
+        }
+        lock.lock();
+        try {
+            if (size < capacity) {
+                requests.addLast(request);
+                size++;
+                return null;
+            }
+            if (policy == SheddingPolicy.REJECT_NEWEST) {
+                return request;
+            }
+            RequestContext oldest = requests.pollFirst();
+            requests.addLast(request);
+            return oldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private RequestContext offerByPriority(RequestContext request, int requestPriority) {
+        lock.lock();
+        try {
+            RequestContext evicted = null;
+            if (size == capacity) {
+                Map.Entry<Integer, ArrayDeque<RequestContext>> lowest =
+                        requestsByPriority.firstEntry();
+                if (lowest.getKey() >= requestPriority) {
+                    return request;
+                }
+                evicted = lowest.getValue().pollLast();
+                if (lowest.getValue().isEmpty()) {
+                    requestsByPriority.remove(lowest.getKey());
+                }
+                size--;
+            }
+            requestsByPriority.computeIfAbsent(requestPriority, p -> new ArrayDeque<>())
+                    .addLast(request);
+            size++;
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RequestContext poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            size--;
+            if (requests != null) {
+                return requests.pollFirst();
+            }
+            Map.Entry<Integer, ArrayDeque<RequestContext>> highest =
+                    requestsByPriority.lastEntry();
+            RequestContext request = highest.getValue().pollFirst();
+            if (highest.getValue().isEmpty()) {
+                requestsByPriority.remove(highest.getKey());
+            }
+            return request;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public SheddingPolicy getPolicy() {
+        return policy;
+    }
+}
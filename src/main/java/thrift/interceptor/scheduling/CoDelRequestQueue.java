@@ -0,0 +1,104 @@
+package thrift.interceptor.scheduling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * A {@link RequestQueue} that applies Controlled Delay (CoDel) to another queue.
+ *
+ * The queue sojourn time of every request is measured when it is dequeued. The minimum sojourn
+ * time of an interval tells a burst, which drains within the interval, apart from a standing
+ * backlog, where even the luckiest request waited longer than {@code target}. Once an interval
+ * ends with its minimum above target, the queue is considered overloaded for the next interval
+ * and requests that waited more than twice the target are shed at dequeue with
+ * {@link OverloadException.Reason#QUEUE_DELAY}, keeping the backlog and tail latency bounded
+ * without sizing the queue for each deployment. This is the variant of CoDel commonly used in
+ * front of RPC server thread pools.
+ *
+ * @author uday
+ */
+public class CoDelRequestQueue implements RequestQueue {
+
+    private final RequestQueue delegate;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final long sheddingThresholdNanos;
+    private final AtomicLong shedCount = new AtomicLong();
+
+    // guarded by this.
+    private long intervalEndNanos;
+    private long minSojournNanos = Long.MAX_VALUE;
+    private volatile boolean overloaded;
+
+    /**
+     * @param delegate
+     *         queue ordering and bounding the requests.
+     * @param target
+     *         acceptable queue sojourn time.
+     * @param interval
+     *         how long the minimum sojourn time has to stay above target before requests are
+     *         shed.
+     */
+    public CoDelRequestQueue(RequestQueue delegate, long target, long interval, TimeUnit unit) {
+        this.delegate = delegate;
+        this.targetNanos = unit.toNanos(target);
+        this.intervalNanos = unit.toNanos(interval);
+        this.sheddingThresholdNanos = 2 * targetNanos;
+        this.intervalEndNanos = System.nanoTime() + intervalNanos;
+    }
+
+    @Override
+    public RequestContext offer(RequestContext request) {
+        return delegate.offer(request);
+    }
+
+    @Override
+    public RequestContext poll() {
+        RequestContext request = delegate.poll();
+        if (request == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long sojournNanos = now - request.getEnqueuedNanos();
+        if (!shouldShed(now, sojournNanos)) {
+            return request;
+        }
+        shedCount.incrementAndGet();
+        request.getResultCallback().onError(OverloadException.Reason.QUEUE_DELAY.getException());
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    /**
+     * @return true if the last interval ended with its minimum sojourn time above target.
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * @return number of requests shed because of their queue sojourn time.
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    private synchronized boolean shouldShed(long now, long sojournNanos) {
+        if (now - intervalEndNanos >= 0) {
+            // no sample during the first interval leaves the minimum at Long.MAX_VALUE.
+            overloaded = minSojournNanos != Long.MAX_VALUE && minSojournNanos > targetNanos;
+            minSojournNanos = sojournNanos;
+            intervalEndNanos = now + intervalNanos;
+        } else if (sojournNanos < minSojournNanos) {
+            minSojournNanos = sojournNanos;
+        }
+        return overloaded && sojournNanos > sheddingThresholdNanos;
+    }
+}
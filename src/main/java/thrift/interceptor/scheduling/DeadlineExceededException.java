@@ -0,0 +1,27 @@
+package thrift.interceptor.scheduling;
+
+import org.apache.thrift.TException;
+
+/**
+ * Completes a request whose deadline passed while it was queued. Such a request is discarded
+ * without running the request pre-process interceptors or the handler.
+ *
+ * The instance is shared and carries no stack trace.
+ *
+ * @author uday
+ */
+public class DeadlineExceededException extends TException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final DeadlineExceededException INSTANCE = new DeadlineExceededException();
+
+    private DeadlineExceededException() {
+        super("Deadline exceeded while queued");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,25 @@
+package thrift.interceptor.scheduling;
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * Extracts the absolute deadline of a request, after which its client no longer waits for the
+ * response.
+ *
+ * @author uday
+ */
+@FunctionalInterface
+public interface DeadlineExtractor {
+
+    /**
+     * Deadline of requests that don't carry one.
+     */
+    long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Called once per request, on the selector thread.
+     *
+     * @return the deadline of the request in epoch milliseconds, or {@link #NO_DEADLINE}.
+     */
+    long getDeadline(RequestContext request);
+}
@@ -0,0 +1,166 @@
+package thrift.interceptor.scheduling;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * A {@link RequestQueue} that hands out the request with the earliest deadline first (EDF).
+ *
+ * Under a burst, serving the requests closest to expiry first completes more of them before
+ * their deadline than serving them in arrival order. Requests whose deadline passed while queued
+ * are discarded when they reach the head of the queue: they are completed with
+ * {@link DeadlineExceededException} without running the pre-process interceptors or the handler.
+ * Requests without a deadline are served after all the requests with one, in arrival order.
+ *
+ * The queue is a binary heap over preallocated arrays, so queuing a request doesn't allocate.
+ * When the queue is full, new requests are rejected.
+ *
+ * @author uday
+ */
+public class DeadlineRequestQueue implements RequestQueue {
+
+    private final DeadlineExtractor deadlineExtractor;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final RequestContext[] requests;
+    private final long[] deadlines;
+    // arrival order, breaks ties between requests with the same deadline.
+    private final long[] sequences;
+    private long nextSequence;
+    private int size;
+
+    /**
+     * @param capacity
+     *         maximum number of queued requests.
+     * @param deadlineExtractor
+     *         extracts the deadline of a request, in epoch milliseconds.
+     */
+    public DeadlineRequestQueue(int capacity, DeadlineExtractor deadlineExtractor) {
+        this(capacity, deadlineExtractor, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock
+     *         current time in epoch milliseconds.
+     */
+    public DeadlineRequestQueue(int capacity, DeadlineExtractor deadlineExtractor,
+                                LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.deadlineExtractor = deadlineExtractor;
+        this.clock = clock;
+        this.requests = new RequestContext[capacity];
+        this.deadlines = new long[capacity];
+        this.sequences = new long[capacity];
+    }
+
+    @Override
+    public RequestContext offer(RequestContext request) {
+        long deadline = deadlineExtractor.getDeadline(request);
+        lock.lock();
+        try {
+            if (size == requests.length) {
+                return request;
+            }
+            siftUp(size++, request, deadline, nextSequence++);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RequestContext poll() {
+        RequestContext request;
+        long deadline;
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            request = requests[0];
+            deadline = deadlines[0];
+            removeHead();
+        } finally {
+            lock.unlock();
+        }
+        if (deadline == DeadlineExtractor.NO_DEADLINE || clock.getAsLong() < deadline) {
+            return request;
+        }
+        request.getResultCallback().onError(DeadlineExceededException.INSTANCE);
+        return null;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeHead() {
+        int last = --size;
+        RequestContext request = requests[last];
+        long deadline = deadlines[last];
+        long sequence = sequences[last];
+        requests[last] = null;
+        if (last > 0) {
+            siftDown(0, request, deadline, sequence);
+        }
+    }
+
+    private void siftUp(int index, RequestContext request, long deadline, long sequence) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(deadline, sequence, deadlines[parent], sequences[parent])) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        set(index, request, deadline, sequence);
+    }
+
+    private void siftDown(int index, RequestContext request, long deadline, long sequence) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size
+                    && before(deadlines[right], sequences[right], deadlines[child],
+                    sequences[child])) {
+                child = right;
+            }
+            if (!before(deadlines[child], sequences[child], deadline, sequence)) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        set(index, request, deadline, sequence);
+    }
+
+    private static boolean before(long deadline, long sequence, long otherDeadline,
+                                  long otherSequence) {
+        return deadline < otherDeadline
+                || (deadline == otherDeadline && sequence < otherSequence);
+    }
+
+    private void move(int from, int to) {
+        set(to, requests[from], deadlines[from], sequences[from]);
+    }
+
+    private void set(int index, RequestContext request, long deadline, long sequence) {
+        requests[index] = request;
+        deadlines[index] = deadline;
+        sequences[index] = sequence;
+    }
+}
@@ -0,0 +1,209 @@
+package thrift.interceptor.scheduling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * A {@link RequestQueue} with one sub-queue per tenant, served by deficit round robin (DRR).
+ *
+ * Each round visits the tenants with queued requests in turn and serves up to {@code weight}
+ * requests of each, so a tenant sending more than its share only grows its own sub-queue and
+ * can't delay the requests of the others. A tenant holding {@code maxQueuedPerTenant} requests
+ * has its new requests rejected while the other tenants are still admitted, up to
+ * {@code capacity} requests in total.
+ *
+ * Queuing a request doesn't lock: sub-queues are looked up in a {@link ConcurrentHashMap} and
+ * are lock-free, and a sub-queue joins the round robin with a compare-and-set when it becomes
+ * non-empty. Only the threads dequeuing requests share a lock. A sub-queue is removed from the
+ * map once it is drained, so idle tenants don't use memory.
+ *
+ * @author uday
+ */
+public class FairRequestQueue implements RequestQueue {
+
+    private final int capacity;
+    private final int maxQueuedPerTenant;
+    private final TenantExtractor tenantExtractor;
+    private final ToIntFunction<Object> weights;
+
+    private final ConcurrentHashMap<Object, TenantQueue> tenantQueues = new ConcurrentHashMap<>();
+    // tenants with queued requests, in round robin order.
+    private final Queue<TenantQueue> activeTenants = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final ReentrantLock pollLock = new ReentrantLock();
+    // guarded by pollLock, the tenant being served in the current round.
+    private TenantQueue current;
+
+    /**
+     * Creates a queue where every tenant has the same weight.
+     */
+    public FairRequestQueue(int capacity, int maxQueuedPerTenant,
+                            TenantExtractor tenantExtractor) {
+        this(capacity, maxQueuedPerTenant, tenantExtractor, tenant -> 1);
+    }
+
+    /**
+     * @param capacity
+     *         maximum number of queued requests, across tenants.
+     * @param maxQueuedPerTenant
+     *         maximum number of queued requests of a single tenant.
+     * @param tenantExtractor
+     *         extracts the tenant of a request.
+     * @param weights
+     *         number of requests served per round for a tenant, at least 1. It is called when a
+     *         tenant starts queuing requests after being idle.
+     */
+    public FairRequestQueue(int capacity, int maxQueuedPerTenant, TenantExtractor tenantExtractor,
+                            ToIntFunction<Object> weights) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (maxQueuedPerTenant <= 0) {
+            throw new IllegalArgumentException("maxQueuedPerTenant must be positive: "
+                    + maxQueuedPerTenant);
+        }
+        this.capacity = capacity;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.tenantExtractor = tenantExtractor;
+        this.weights = weights;
+    }
+
+    @Override
+    public RequestContext offer(RequestContext request) {
+        Object tenant = tenantExtractor.getTenant(request);
+        if (tenant == null) {
+            tenant = TenantExtractor.DEFAULT_TENANT;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return request;
+        }
+        TenantQueue tenantQueue = tenantQueues.get(tenant);
+        if (tenantQueue == null) {
+            tenantQueue = tenantQueues.computeIfAbsent(tenant, this::newTenantQueue);
+        }
+        if (tenantQueue.size.incrementAndGet() > maxQueuedPerTenant) {
+            tenantQueue.size.decrementAndGet();
+            size.decrementAndGet();
+            return request;
+        }
+        tenantQueue.requests.offer(request);
+        tenantQueue.schedule();
+        return null;
+    }
+
+    @Override
+    public RequestContext poll() {
+        pollLock.lock();
+        try {
+            for (;;) {
+                TenantQueue tenantQueue = current;
+                if (tenantQueue == null) {
+                    tenantQueue = activeTenants.poll();
+                    if (tenantQueue == null) {
+                        return null;
+                    }
+                    tenantQueue.deficit += tenantQueue.weight;
+                    current = tenantQueue;
+                }
+                RequestContext request = tenantQueue.requests.poll();
+                if (request == null) {
+                    current = null;
+                    tenantQueue.deficit = 0;
+                    deschedule(tenantQueue);
+                    continue;
+                }
+                tenantQueue.size.decrementAndGet();
+                size.decrementAndGet();
+                if (--tenantQueue.deficit <= 0) {
+                    // end of its turn, it stays scheduled at the back of the round robin.
+                    current = null;
+                    activeTenants.offer(tenantQueue);
+                }
+                return request;
+            }
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of queued requests of the tenant.
+     */
+    public int getQueueDepth(Object tenant) {
+        TenantQueue tenantQueue = tenantQueues.get(tenant);
+        return tenantQueue == null ? 0 : tenantQueue.size.get();
+    }
+
+    /**
+     * @return number of queued requests of every tenant with queued requests.
+     */
+    public Map<Object, Integer> getQueueDepths() {
+        Map<Object, Integer> queueDepths = new HashMap<>();
+        tenantQueues.forEach((tenant, tenantQueue) -> {
+            int depth = tenantQueue.size.get();
+            if (depth > 0) {
+                queueDepths.put(tenant, depth);
+            }
+        });
+        return queueDepths;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private TenantQueue newTenantQueue(Object tenant) {
+        return new TenantQueue(tenant, Math.max(1, weights.applyAsInt(tenant)));
+    }
+
+    /**
+     * Takes a drained tenant out of the round robin and the map. A request queued concurrently
+     * with its old sub-queue, before it was removed from the map, schedules it again.
+     */
+    private void deschedule(TenantQueue tenantQueue) {
+        tenantQueue.scheduled.set(false);
+        tenantQueues.remove(tenantQueue.tenant, tenantQueue);
+        if (!tenantQueue.requests.isEmpty()) {
+            tenantQueue.schedule();
+        }
+    }
+
+    private class TenantQueue {
+
+        private final Object tenant;
+        private final int weight;
+        private final Queue<RequestContext> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // guarded by pollLock.
+        private int deficit;
+
+        TenantQueue(Object tenant, int weight) {
+            this.tenant = tenant;
+            this.weight = weight;
+        }
+
+        void schedule() {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                activeTenants.offer(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package thrift.interceptor.scheduling;
+
+import org.apache.thrift.TException;
+
+/**
+ * Completes a request that the server sheds because it is overloaded, before the request reaches
+ * the executor.
+ *
+ * The instances are shared and carry no stack trace, so shedding a request stays cheap.
+ *
+ * @author uday
+ */
+public class OverloadException extends TException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a request was shed.
+     */
+    public enum Reason {
+        /**
+         * The admission queue was full when the request arrived.
+         */
+        QUEUE_FULL("Server overloaded: request queue is full"),
+        /**
+         * The request was queued but evicted to make room for another request.
+         */
+        EVICTED("Server overloaded: request evicted from queue"),
+        /**
+         * The executor refused to run the request.
+         */
+        EXECUTOR_REJECTED("Server overloaded: executor rejected request"),
+        /**
+         * The request waited in the queue for too long while the queue had a standing backlog,
+         * see {@link CoDelRequestQueue}.
+         */
+        QUEUE_DELAY("Server overloaded: request queued for too long"),
+        /**
+         * Too many requests were in flight when the request arrived, see
+         * {@link thrift.interceptor.limit.ConcurrencyLimitInterceptor}.
+         */
+        CONCURRENCY_LIMIT("Server overloaded: too many requests in flight");
+
+        private final OverloadException exception;
+
+        Reason(String message) {
+            this.exception = new OverloadException(this, message);
+        }
+
+        public OverloadException getException() {
+            return exception;
+        }
+    }
+
+    private final Reason reason;
+
+    private OverloadException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,45 @@
+package thrift.interceptor.scheduling;
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * Holds the requests accepted by a {@link thrift.interceptor.ThriftMiddlewareProxy} until a worker
+ * of its executor is free to process them.
+ *
+ * Requests go through the creation interceptors before being offered, and through the
+ * pre-process interceptors after being polled. A queue decides which requests are shed when it
+ * is full and in which order the others are processed. Implementations must be thread-safe:
+ * requests are offered on the selector thread and polled on the worker threads.
+ *
+ * @author uday
+ */
+public interface RequestQueue {
+
+    /**
+     * Offers a request to the queue.
+     *
+     * @param request
+     *         a request that passed the request creation interceptors.
+     *
+     * @return null if the request was queued, the request itself if it was rejected, or another
+     *         request that was evicted to make room for it. The caller completes the returned
+     *         request with an {@link OverloadException}.
+     */
+    RequestContext offer(RequestContext request);
+
+    /**
+     * Removes one request from the queue. The proxy hands over one task per queued request, and
+     * each task polls once, so a request shed at dequeue must not be replaced by another one:
+     * the task of the other request would find the queue empty.
+     *
+     * @return the next request to process, or null if the queue is empty or the request removed
+     *         was shed, in which case the queue completed it with an {@link OverloadException} or
+     *         a {@link DeadlineExceededException}.
+     */
+    RequestContext poll();
+
+    /**
+     * @return number of queued requests.
+     */
+    int size();
+}
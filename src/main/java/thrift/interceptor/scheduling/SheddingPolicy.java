@@ -0,0 +1,26 @@
+package thrift.interceptor.scheduling;
+
+/**
+ * Decides which request a full {@link BoundedRequestQueue} sheds.
+ *
+ * @author uday
+ */
+public enum SheddingPolicy {
+
+    /**
+     * Rejects the request that arrives while the queue is full.
+     */
+    REJECT_NEWEST,
+
+    /**
+     * Evicts the request that has been queued for the longest time to accept the new one. The
+     * oldest request is the most likely to be abandoned by its client already.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Serves requests by priority and, while the queue is full, evicts the newest request of the
+     * lowest priority if the new request has a higher priority; otherwise rejects the new request.
+     */
+    REJECT_BY_PRIORITY
+}
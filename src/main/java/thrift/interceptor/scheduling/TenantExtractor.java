@@ -0,0 +1,25 @@
+package thrift.interceptor.scheduling;
+
+import thrift.interceptor.RequestContext;
+
+/**
+ * Extracts the tenant, e.g. the client, a request is queued for by {@link FairRequestQueue}.
+ *
+ * @author uday
+ */
+@FunctionalInterface
+public interface TenantExtractor {
+
+    /**
+     * Tenant of requests that don't identify one.
+     */
+    Object DEFAULT_TENANT = "";
+
+    /**
+     * Called once per request, on the selector thread.
+     *
+     * @return a key identifying the tenant, with {@link Object#equals(Object)} and
+     *         {@link Object#hashCode()} implemented, or {@link #DEFAULT_TENANT}.
+     */
+    Object getTenant(RequestContext request);
+}
@@ -0,0 +1,204 @@
+package thrift.interceptor.utils;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Executor} that runs each task on its own virtual thread, with at most
+ * {@code maxConcurrency} tasks running at a time. Tasks submitted beyond that limit wait for a
+ * running task to finish, up to {@code maxQueued} of them; the others are rejected with a
+ * {@link RejectedExecutionException} instead of piling up in memory. A waiting task runs on the
+ * thread of the task that finished.
+ *
+ * Virtual threads are created through reflection, so this class can be used on any JDK. If the
+ * running JDK doesn't support them (see {@link #isVirtualThreadSupported()}), the tasks run on
+ * platform threads of a pool that grows up to {@code maxConcurrency} threads and shrinks when idle.
+ *
+ * @author uday
+ */
+public class VirtualThreadExecutor implements Executor {
+
+    private static final String THREAD_NAME_PREFIX = "thrift-request-";
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private final Semaphore permits;
+    private final Executor platformThreads;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final Queue<Runnable> queuedTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+
+    /**
+     * Creates an executor rejecting the tasks submitted while maxConcurrency tasks are running.
+     *
+     * @param maxConcurrency
+     *         maximum number of tasks running at the same time.
+     */
+    public VirtualThreadExecutor(int maxConcurrency) {
+        this(maxConcurrency, 0);
+    }
+
+    /**
+     * @param maxConcurrency
+     *         maximum number of tasks running at the same time.
+     * @param maxQueued
+     *         maximum number of tasks waiting for a running task to finish.
+     */
+    public VirtualThreadExecutor(int maxConcurrency, int maxQueued) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: "
+                    + maxConcurrency);
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued must not be negative: " + maxQueued);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+        this.permits = new Semaphore(maxConcurrency);
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            this.platformThreads = null;
+        } else {
+            // a permit is released before its thread is idle: the queue absorbs the task that
+            // got the permit in the meantime, the permits still bound the tasks to
+            // maxConcurrency.
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+            pool.allowCoreThreadTimeOut(true);
+            this.platformThreads = pool;
+        }
+    }
+
+    /**
+     * @return true if the running JDK supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (permits.tryAcquire()) {
+            start(command);
+            return;
+        }
+        if (queuedCount.incrementAndGet() > maxQueued) {
+            queuedCount.decrementAndGet();
+            throw new RejectedExecutionException(
+                    "More than " + maxConcurrency + " concurrent requests");
+        }
+        queuedTasks.offer(command);
+        // the running tasks may all have finished before the task was queued.
+        startQueuedTask();
+    }
+
+    /**
+     * @return number of tasks currently running.
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return number of tasks waiting for a running task to finish.
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Runs command with a permit already acquired.
+     */
+    private void start(Runnable command) {
+        Runnable task = () -> runTasks(command);
+        try {
+            if (platformThreads != null) {
+                platformThreads.execute(task);
+            } else {
+                VIRTUAL_THREAD_FACTORY.newThread(task).start();
+            }
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs command, then the queued tasks, until none is left.
+     */
+    private void runTasks(Runnable command) {
+        try {
+            for (Runnable task = command; task != null; task = pollQueuedTask()) {
+                task.run();
+            }
+        } finally {
+            permits.release();
+            // a task queued since the last poll is left to whoever gets the permit.
+            startQueuedTask();
+        }
+    }
+
+    private void startQueuedTask() {
+        while (!queuedTasks.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pollQueuedTask();
+            if (task == null) {
+                permits.release();
+            } else {
+                start(task);
+                return;
+            }
+        }
+    }
+
+    private Runnable pollQueuedTask() {
+        Runnable task = queuedTasks.poll();
+        if (task != null) {
+            queuedCount.decrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * Looks up {@code Thread.ofVirtual().name(prefix, 0).factory()}, available since JDK 21.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, THREAD_NAME_PREFIX, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, THREAD_NAME_PREFIX + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
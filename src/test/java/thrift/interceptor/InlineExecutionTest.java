@@ -0,0 +1,78 @@
+package thrift.interceptor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author uday
+ */
+public class InlineExecutionTest {
+
+    private static final long MAX_SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final InlineExecution inlineExecution = new InlineExecution(MAX_SERVICE_NANOS);
+    private long now = System.nanoTime();
+
+    @Test
+    public void fixedPolicyIsNotAdaptive() {
+        InlineExecution fixed = new InlineExecution(Long.MAX_VALUE);
+        assertFalse(fixed.isAdaptive());
+        assertTrue(fixed.isInline());
+    }
+
+    @Test
+    public void offloadsSlowMethodWithFewSamplesPerWindow() {
+        // a handler blocking for 20ms completes 50 requests in a window.
+        window(50, 2 * MAX_SERVICE_NANOS);
+        assertFalse(inlineExecution.isInline());
+    }
+
+    @Test
+    public void keepsSingleOutlierInline() {
+        window(49, MAX_SERVICE_NANOS / 10);
+        window(1, 2 * MAX_SERVICE_NANOS);
+        assertTrue(inlineExecution.isInline());
+    }
+
+    @Test
+    public void offloadsOnceP99ExceedsMax() {
+        window(98, MAX_SERVICE_NANOS / 10);
+        assertTrue(inlineExecution.isInline());
+        window(2, 2 * MAX_SERVICE_NANOS);
+        assertFalse(inlineExecution.isInline());
+    }
+
+    @Test
+    public void bringsBackInlineAcrossWindows() {
+        window(50, 2 * MAX_SERVICE_NANOS);
+        assertFalse(inlineExecution.isInline());
+        // samples of windows below the minimum are carried over.
+        window(60, MAX_SERVICE_NANOS / 10);
+        assertFalse(inlineExecution.isInline());
+        window(60, MAX_SERVICE_NANOS / 10);
+        assertTrue(inlineExecution.isInline());
+    }
+
+    @Test
+    public void keepsOffloadedAboveHalfOfMax() {
+        window(50, 2 * MAX_SERVICE_NANOS);
+        window(100, MAX_SERVICE_NANOS * 3 / 4);
+        assertFalse(inlineExecution.isInline());
+    }
+
+    /**
+     * Records samples, the last one at the end of the current window.
+     */
+    private void window(int samples, long serviceNanos) {
+        for (int i = 0; i < samples - 1; i++) {
+            inlineExecution.record(serviceNanos, now);
+        }
+        now += WINDOW_NANOS + 1;
+        inlineExecution.record(serviceNanos, now);
+    }
+}
@@ -0,0 +1,95 @@
+package thrift.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.Test;
+
+
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.utils.DirectExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author uday
+ */
+public class InterceptorChainTest {
+
+    private final List<Object> arguments = new ArrayList<>();
+
+    @Test
+    public void bindsArgumentInterceptorToItsArgument() throws TException {
+        Options options = new Options(0, 3);
+        MultiplicationService.AsyncIface proxy = ThriftMiddlewareProxy.wrap(
+                MultiplicationService.AsyncIface.class,
+                builder().addRequestCreationInterceptor(new Recorder<>(Options.class)).build());
+        proxy.multiply(6, 7, options, new NoOpCallback());
+        assertEquals(1, arguments.size());
+        assertSame(options, arguments.get(0));
+    }
+
+    @Test
+    public void skipsMethodsWithoutArgument() throws TException {
+        MultiplicationService.AsyncIface proxy = ThriftMiddlewareProxy.wrap(
+                MultiplicationService.AsyncIface.class,
+                builder().addRequestCreationInterceptor(new Recorder<>(String.class)).build());
+        proxy.multiply(6, 7, new Options(0, 3), new NoOpCallback());
+        assertTrue(arguments.isEmpty());
+    }
+
+    @Test
+    public void rejectsArgumentInterceptorApplyingToMethodWithoutArgument() {
+        Recorder<String> recorder = new Recorder<String>(String.class) {
+            @Override
+            public boolean appliesTo(Method method) {
+                return true;
+            }
+        };
+        try {
+            builder().addRequestCreationInterceptor(recorder).build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(String.class.getName()));
+            assertTrue(e.getMessage(), e.getMessage().contains("multiply"));
+        }
+    }
+
+    private ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface> builder() {
+        return new ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface>(
+                (n1, n2, options, resultHandler) -> resultHandler.onComplete(n1 * n2),
+                DirectExecutor.INSTANCE);
+    }
+
+    private class Recorder<A> extends ArgumentInterceptor<A> {
+
+        Recorder(Class<A> argumentType) {
+            super(argumentType);
+        }
+
+        @Override
+        public AsyncMethodCallbackListener<Object> intercept(RequestContext context,
+                                                             A argument) {
+            arguments.add(argument);
+            return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+        }
+    }
+
+    private static final class NoOpCallback implements AsyncMethodCallback<Integer> {
+
+        @Override
+        public void onComplete(Integer response) {
+        }
+
+        @Override
+        public void onError(Exception exception) {
+        }
+    }
+}
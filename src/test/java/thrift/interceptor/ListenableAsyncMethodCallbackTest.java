@@ -0,0 +1,94 @@
+package thrift.interceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.Test;
+
+
+import thrift.interceptor.utils.DirectExecutor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author uday
+ */
+public class ListenableAsyncMethodCallbackTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    @Test
+    public void notifiesResultCallbackThenListenersInOrder() {
+        ListenableAsyncMethodCallback<Object> callback =
+                new ListenableAsyncMethodCallback<>(recorder("result"));
+        callback.addListener(listener("a"));
+        callback.addListener(listener("b"));
+        callback.addListener(listener("c"));
+        callback.onComplete(1);
+        assertEquals(Arrays.asList("result:1", "a:1", "b:1", "c:1"), events);
+    }
+
+    @Test
+    public void notifiesListenerAddedAfterCompletion() {
+        ListenableAsyncMethodCallback<Object> callback = new ListenableAsyncMethodCallback<>();
+        callback.onError(new Exception("e"));
+        callback.addListener(listener("a"));
+        assertEquals(Arrays.asList("a:e"), events);
+    }
+
+    @Test
+    public void completesOnce() {
+        ListenableAsyncMethodCallback<Object> callback = new ListenableAsyncMethodCallback<>();
+        callback.addListener(listener("a"));
+        callback.onComplete(1);
+        callback.onComplete(2);
+        callback.onError(new Exception("e"));
+        assertEquals(Arrays.asList("a:1"), events);
+    }
+
+    @Test
+    public void notifiesManyListenersWithoutRecursing() {
+        int listeners = 100_000;
+        ListenableAsyncMethodCallback<Object> callback = new ListenableAsyncMethodCallback<>();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < listeners; i++) {
+            int index = i;
+            callback.addListener(new AsyncMethodCallbackListener<>(
+                    new AsyncMethodCallback<Object>() {
+                        @Override
+                        public void onComplete(Object response) {
+                            order.add(index);
+                        }
+
+                        @Override
+                        public void onError(Exception exception) {
+                        }
+                    }, DirectExecutor.INSTANCE));
+        }
+        callback.onComplete(1);
+        assertEquals(listeners, order.size());
+        for (int i = 0; i < listeners; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    private AsyncMethodCallbackListener<Object> listener(String name) {
+        return new AsyncMethodCallbackListener<>(recorder(name), DirectExecutor.INSTANCE);
+    }
+
+    private AsyncMethodCallback<Object> recorder(String name) {
+        return new AsyncMethodCallback<Object>() {
+            @Override
+            public void onComplete(Object response) {
+                events.add(name + ":" + response);
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                events.add(name + ":" + exception.getMessage());
+            }
+        };
+    }
+}
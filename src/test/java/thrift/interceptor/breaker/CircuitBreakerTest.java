@@ -0,0 +1,196 @@
+package thrift.interceptor.breaker;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author uday
+ */
+public class CircuitBreakerTest {
+
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final int PROBES = 3;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private final CircuitBreaker breaker = new CircuitBreaker.Builder()
+            .minimumCalls(4)
+            .failureRateThreshold(0.5)
+            .openDuration(OPEN_NANOS, TimeUnit.NANOSECONDS)
+            .halfOpenProbes(PROBES)
+            .probeTimeout(PROBE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS)
+            .clock(clock::get)
+            .build();
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        call(true);
+        call(true);
+        call(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRate() {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.25, breaker.getFailureRate(), 0);
+    }
+
+    @Test
+    public void opensAtFailureRate() {
+        open();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void letsProbesThroughAfterOpenDuration() {
+        open();
+        clock.addAndGet(OPEN_NANOS - 1);
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        clock.addAndGet(1);
+        for (int i = 0; i < PROBES; i++) {
+            assertTrue(breaker.tryAcquire().isProbe());
+        }
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void closesOnceAllProbesSucceed() {
+        CircuitBreaker.Permit probe = halfOpen();
+        for (int i = 0; i < PROBES; i++) {
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+            breaker.onResult(probe, 0, false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertSame(CircuitBreaker.Permit.CALL, breaker.tryAcquire());
+        assertEquals(0, breaker.getFailureRate(), 0);
+    }
+
+    @Test
+    public void opensAgainOnFailedProbe() {
+        CircuitBreaker.Permit probe = halfOpen();
+        breaker.onResult(probe, 0, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void opensAgainOnProbeTimeout() {
+        halfOpen();
+        clock.addAndGet(PROBE_TIMEOUT_NANOS - 1);
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        clock.addAndGet(1);
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void ignoresProbesOfEarlierPeriods() {
+        CircuitBreaker.Permit stale = halfOpen();
+        clock.addAndGet(PROBE_TIMEOUT_NANOS);
+        breaker.tryAcquire();
+        clock.addAndGet(OPEN_NANOS);
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertTrue(probe.isProbe());
+        assertNotSame(stale, probe);
+        breaker.onResult(stale, 0, true);
+        breaker.onCancel(stale);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        for (int i = 1; i < PROBES; i++) {
+            assertSame(probe, breaker.tryAcquire());
+        }
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void cancelledProbeIsGivenBack() {
+        CircuitBreaker.Permit probe = halfOpen();
+        assertSame(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        breaker.onCancel(probe);
+        assertSame(probe, breaker.tryAcquire());
+    }
+
+    @Test
+    public void concurrentCallersDontReopenStartingPeriod() throws Exception {
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+            CircuitBreaker breaker = new CircuitBreaker.Builder()
+                    .minimumCalls(1)
+                    .openDuration(OPEN_NANOS, TimeUnit.NANOSECONDS)
+                    .halfOpenProbes(PROBES)
+                    .probeTimeout(PROBE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS)
+                    .clock(clock::get)
+                    .build();
+            breaker.onResult(breaker.tryAcquire(), 0, true);
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            clock.addAndGet(OPEN_NANOS);
+
+            CyclicBarrier start = new CyclicBarrier(threads);
+            AtomicInteger probes = new AtomicInteger();
+            Thread[] callers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                callers[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int j = 0; j < 100; j++) {
+                        if (breaker.tryAcquire().isProbe()) {
+                            probes.incrementAndGet();
+                        }
+                    }
+                });
+                callers[i].start();
+            }
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            assertEquals("round " + round, CircuitBreaker.State.HALF_OPEN, breaker.getState());
+            assertEquals("round " + round, PROBES, probes.get());
+        }
+    }
+
+    private void call(boolean failed) {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        assertSame(CircuitBreaker.Permit.CALL, permit);
+        breaker.onResult(permit, 0, failed);
+    }
+
+    private void open() {
+        call(false);
+        call(false);
+        call(true);
+        call(true);
+    }
+
+    /**
+     * @return a probe of the half-open period started, the others being taken.
+     */
+    private CircuitBreaker.Permit halfOpen() {
+        open();
+        clock.addAndGet(OPEN_NANOS);
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        for (int i = 1; i < PROBES; i++) {
+            assertSame(probe, breaker.tryAcquire());
+        }
+        return probe;
+    }
+}
@@ -0,0 +1,183 @@
+package thrift.interceptor.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.Test;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.example.multiply.MultiplicationService;
+import thrift.interceptor.example.multiply.Options;
+import thrift.interceptor.scheduling.DeadlineExceededException;
+import thrift.interceptor.scheduling.DeadlineExtractor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Leaders and followers of {@link Flights}, through a {@link RequestCoalescingInterceptor} run by
+ * a {@link ThriftMiddlewareProxy} whose executor only runs the tasks handed to it when told to.
+ *
+ * @author uday
+ */
+public class FlightsTest {
+
+    // requests of this client fail before reaching the handler, as if their deadline passed.
+    private static final int EXPIRED_CLIENT = 1;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<AsyncMethodCallback<Integer>> handlerCalls = new ArrayList<>();
+
+    private final RequestCoalescingInterceptor coalescing = new RequestCoalescingInterceptor
+            .Builder()
+            .coalesce("multiply")
+            .ignoreField(Options.class, Options._Fields.CLIENT_ID)
+            .ignoreField(Options.class, Options._Fields.TIMEOUT)
+            .deadlineExtractor(context -> {
+                long timeout = context.getArgument(Options.class).getTimeout();
+                return timeout == 0 ? DeadlineExtractor.NO_DEADLINE : timeout;
+            })
+            .build();
+
+    private final MultiplicationService.AsyncIface proxy = ThriftMiddlewareProxy.wrap(
+            MultiplicationService.AsyncIface.class,
+            new ThriftMiddlewareProxy.Builder<MultiplicationService.AsyncIface>(
+                    (n1, n2, options, resultHandler) -> handlerCalls.add(resultHandler), tasks::add)
+                    .addRequestCreationInterceptor(coalescing)
+                    .addRequestPreProcessInterceptor(context -> {
+                        if (context.getArgument(Options.class).getClientId() == EXPIRED_CLIENT) {
+                            throw DeadlineExceededException.INSTANCE;
+                        }
+                        return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+                    })
+                    .build());
+
+    @Test
+    public void followersCompleteWithResponseOfLeader() throws TException {
+        Result leader = multiply(2);
+        Result follower = multiply(3);
+        runTasks();
+        assertEquals(1, handlerCalls.size());
+        assertEquals(1, coalescing.getCoalescedCount(method()));
+        handlerCalls.get(0).onComplete(42);
+        assertEquals(42, leader.response);
+        assertEquals(42, follower.response);
+        assertEquals(0, coalescing.getInFlightCount(method()));
+    }
+
+    @Test
+    public void followersFailWithErrorOfHandler() throws TException {
+        Result leader = multiply(2);
+        Result follower = multiply(3);
+        runTasks();
+        TException error = new TException("failed");
+        handlerCalls.get(0).onError(error);
+        assertSame(error, leader.error);
+        assertSame(error, follower.error);
+        assertEquals(1, handlerCalls.size());
+    }
+
+    @Test
+    public void laterRequestsLeadAgain() throws TException {
+        multiply(2);
+        runTasks();
+        handlerCalls.get(0).onComplete(42);
+        Result next = multiply(3);
+        runTasks();
+        assertEquals(2, handlerCalls.size());
+        handlerCalls.get(1).onComplete(43);
+        assertEquals(43, next.response);
+    }
+
+    @Test
+    public void followersOfExpiredLeaderAreResumed() throws TException {
+        Result leader = multiply(EXPIRED_CLIENT);
+        Result follower = multiply(2);
+        Result other = multiply(3);
+        runTasks();
+        assertSame(DeadlineExceededException.INSTANCE, leader.error);
+        // the first follower leads the others.
+        assertEquals(1, handlerCalls.size());
+        handlerCalls.get(0).onComplete(42);
+        assertEquals(42, follower.response);
+        assertEquals(42, other.response);
+        assertEquals(0, coalescing.getInFlightCount(method()));
+    }
+
+    @Test
+    public void followerFailsAtItsOwnDeadline() throws Exception {
+        multiply(2, 0);
+        Result follower = multiply(3, System.currentTimeMillis() + 50);
+        runTasks();
+        assertTrue(follower.done.await(5, TimeUnit.SECONDS));
+        assertSame(DeadlineExceededException.INSTANCE, follower.error);
+    }
+
+    @Test
+    public void manyFollowersComplete() throws TException {
+        List<Result> followers = new ArrayList<>();
+        multiply(2);
+        for (int i = 0; i < 10_000; i++) {
+            followers.add(multiply(3));
+        }
+        runTasks();
+        handlerCalls.get(0).onComplete(42);
+        for (Result follower : followers) {
+            assertEquals(42, follower.response);
+        }
+    }
+
+    private Result multiply(int clientId) throws TException {
+        return multiply(clientId, 0);
+    }
+
+    private Result multiply(int clientId, long deadline) throws TException {
+        Result result = new Result();
+        proxy.multiply(6, 7, new Options(deadline, clientId), result);
+        return result;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static java.lang.reflect.Method method() {
+        try {
+            return MultiplicationService.AsyncIface.class.getMethod("multiply", int.class,
+                    int.class, Options.class, AsyncMethodCallback.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Result implements AsyncMethodCallback<Integer> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Object response;
+        private volatile Exception error;
+
+        @Override
+        public void onComplete(Integer response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            this.error = exception;
+            done.countDown();
+        }
+    }
+}
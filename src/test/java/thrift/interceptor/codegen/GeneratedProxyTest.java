@@ -0,0 +1,71 @@
+package thrift.interceptor.codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.Test;
+
+
+import thrift.interceptor.AsyncMethodCallbackListener;
+import thrift.interceptor.ThriftMiddlewareProxy;
+import thrift.interceptor.utils.DirectExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author uday
+ */
+public class GeneratedProxyTest {
+
+    @GenerateInterceptorProxy
+    static class IndexHandler implements IndexService.AsyncIface {
+
+        @Override
+        public void get(int index, long offset, String name,
+                        AsyncMethodCallback<String> resultHandler) {
+            resultHandler.onComplete(name + index + ":" + offset);
+        }
+    }
+
+    @Test
+    public void gettersReturnArguments() throws TException {
+        List<Object> arguments = new ArrayList<>();
+        ThriftMiddlewareProxy<IndexHandler> middleware = new ThriftMiddlewareProxy
+                .Builder<>(new IndexHandler(), DirectExecutor.INSTANCE)
+                .addRequestCreationInterceptor(context -> {
+                    arguments.add(context.getArgument(0));
+                    arguments.add(context.getInt(0));
+                    arguments.add(context.getArgument(1));
+                    arguments.add(context.getLong(1));
+                    arguments.add(context.getArgument(2));
+                    return AsyncMethodCallbackListener.NO_OP_INSTANCE;
+                })
+                .build();
+        AtomicReference<String> response = new AtomicReference<>();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        new IndexServiceInterceptorProxy(middleware).get(7, 9L, "x",
+                new AsyncMethodCallback<String>() {
+                    @Override
+                    public void onComplete(String result) {
+                        response.set(result);
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        error.set(exception);
+                    }
+                });
+
+        assertNull(error.get());
+        assertEquals("x7:9", response.get());
+        assertEquals(7, arguments.get(0));
+        assertEquals(7, arguments.get(1));
+        assertEquals(9L, arguments.get(2));
+        assertEquals(9L, arguments.get(3));
+        assertEquals("x", arguments.get(4));
+    }
+}
@@ -0,0 +1,19 @@
+package thrift.interceptor.codegen;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+/**
+ * A service shaped like the code generated by the Thrift compiler, whose arguments are named
+ * like the parameters of the methods of {@link thrift.interceptor.RequestContext}.
+ *
+ * @author uday
+ */
+public class IndexService {
+
+    public interface AsyncIface {
+
+        void get(int index, long offset, String name, AsyncMethodCallback<String> resultHandler)
+                throws TException;
+    }
+}
@@ -0,0 +1,169 @@
+package thrift.interceptor.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author uday
+ */
+public class RingBufferDispatcherTest {
+
+    private static final String BLOCK = "block";
+
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> unprocessed = new ArrayList<>();
+    // the consumer waits on it when given BLOCK.
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private RingBufferDispatcher<String> dispatcher;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.shutdown(unprocessed::add);
+        }
+    }
+
+    @Test
+    public void processesRequests() throws InterruptedException {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            int requests = 1_000;
+            CountDownLatch done = new CountDownLatch(requests);
+            RingBufferDispatcher<String> dispatcher = new RingBufferDispatcher<>(64, 4,
+                    waitStrategy, request -> done.countDown(), "test-" + waitStrategy + "-");
+            try {
+                for (int i = 0; i < requests; i++) {
+                    while (!dispatcher.offer("r" + i)) {
+                        Thread.yield();
+                    }
+                }
+                assertTrue(waitStrategy.name(), done.await(5, TimeUnit.SECONDS));
+            } finally {
+                dispatcher.shutdown(unprocessed::add);
+            }
+        }
+        assertTrue(unprocessed.isEmpty());
+    }
+
+    @Test
+    public void refusesRequestsWhenFull() throws InterruptedException {
+        dispatcher = blockingDispatcher(2);
+        assertTrue(dispatcher.offer(BLOCK));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.offer("a"));
+        assertTrue(dispatcher.offer("b"));
+        assertFalse(dispatcher.offer("c"));
+        assertEquals(2, dispatcher.size());
+    }
+
+    @Test
+    public void drainsRequestsLeftOnShutdown() throws InterruptedException {
+        dispatcher = blockingDispatcher(8);
+        assertTrue(dispatcher.offer(BLOCK));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.offer("a"));
+        assertTrue(dispatcher.offer("b"));
+        assertTrue(dispatcher.offer("c"));
+        dispatcher.shutdown(unprocessed::add);
+        assertEquals(Arrays.asList("a", "b", "c"), unprocessed);
+        assertEquals(0, dispatcher.size());
+        assertFalse(dispatcher.offer("d"));
+        release.countDown();
+        // the request being processed when the dispatcher was shut down completes.
+        waitForProcessed(1);
+        assertEquals(Collections.singletonList(BLOCK), processed);
+        assertEquals(Arrays.asList("a", "b", "c"), unprocessed);
+    }
+
+    @Test
+    public void workerSurvivesConsumerError() throws InterruptedException {
+        List<Throwable> reported = Collections.synchronizedList(new ArrayList<>());
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, t) -> reported.add(t));
+        try {
+            AssertionError error = new AssertionError("failed");
+            dispatcher = new RingBufferDispatcher<>(8, 1, WaitStrategy.PARK, request -> {
+                if (request.equals("fail")) {
+                    throw error;
+                }
+                processed.add(request);
+            }, "test-");
+            assertTrue(dispatcher.offer("fail"));
+            assertTrue(dispatcher.offer("a"));
+            waitForProcessed(1);
+            assertEquals(Collections.singletonList("a"), processed);
+            assertEquals(1, reported.size());
+            assertSame(error, reported.get(0));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+
+    @Test
+    public void keepsDrainingWhenUnprocessedCallbackFails() throws InterruptedException {
+        dispatcher = blockingDispatcher(8);
+        assertTrue(dispatcher.offer(BLOCK));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.offer("a"));
+        assertTrue(dispatcher.offer("fail"));
+        assertTrue(dispatcher.offer("b"));
+        Thread.UncaughtExceptionHandler handler =
+                Thread.currentThread().getUncaughtExceptionHandler();
+        List<Throwable> reported = new ArrayList<>();
+        Thread.currentThread().setUncaughtExceptionHandler((thread, t) -> reported.add(t));
+        try {
+            dispatcher.shutdown(failing(unprocessed::add));
+        } finally {
+            Thread.currentThread().setUncaughtExceptionHandler(handler);
+        }
+        assertEquals(Arrays.asList("a", "b"), unprocessed);
+        assertEquals(1, reported.size());
+    }
+
+    /**
+     * @return a dispatcher with a single worker, blocked by BLOCK until released.
+     */
+    private RingBufferDispatcher<String> blockingDispatcher(int capacity) {
+        return new RingBufferDispatcher<>(capacity, 1, WaitStrategy.PARK, request -> {
+            if (request.equals(BLOCK)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            processed.add(request);
+        }, "test-");
+    }
+
+    private static Consumer<String> failing(Consumer<String> consumer) {
+        return request -> {
+            if (request.equals("fail")) {
+                throw new IllegalStateException(request);
+            }
+            consumer.accept(request);
+        };
+    }
+
+    private void waitForProcessed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed.size() < count && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package thrift.interceptor.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author uday
+ */
+public class RateLimiterTest {
+
+    private static final int BURST = 3;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private final RateLimiter rateLimiter = new RateLimiter(10, BURST, IDLE_TIMEOUT_SECONDS,
+            TimeUnit.SECONDS, clock::get);
+
+    @Test
+    public void allowsBurstThenRate() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(rateLimiter.tryAcquire(7));
+        }
+        assertFalse(rateLimiter.tryAcquire(7));
+        clock.addAndGet(INTERVAL_NANOS - 1);
+        assertFalse(rateLimiter.tryAcquire(7));
+        clock.addAndGet(1);
+        assertTrue(rateLimiter.tryAcquire(7));
+        assertFalse(rateLimiter.tryAcquire(7));
+    }
+
+    @Test
+    public void limitsKeysApart() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(rateLimiter.tryAcquire("a"));
+        }
+        assertFalse(rateLimiter.tryAcquire("a"));
+        assertTrue(rateLimiter.tryAcquire("b"));
+        assertTrue(rateLimiter.tryAcquire(1));
+        assertEquals(3, rateLimiter.size());
+    }
+
+    @Test
+    public void integerKeySharesBucketOfIntKey() {
+        assertTrue(rateLimiter.tryAcquire(1000));
+        assertTrue(rateLimiter.tryAcquire(Integer.valueOf(1000)));
+        assertTrue(rateLimiter.tryAcquire(1000));
+        assertFalse(rateLimiter.tryAcquire(Integer.valueOf(1000)));
+        assertEquals(1, rateLimiter.size());
+    }
+
+    @Test
+    public void limitsManyIntKeys() {
+        int keys = 10_000;
+        for (int round = 0; round < BURST; round++) {
+            for (int key = -keys / 2; key < keys / 2; key++) {
+                assertTrue(rateLimiter.tryAcquire(key * 31));
+            }
+        }
+        for (int key = -keys / 2; key < keys / 2; key++) {
+            assertFalse(rateLimiter.tryAcquire(key * 31));
+        }
+        assertEquals(keys, rateLimiter.size());
+    }
+
+    @Test
+    public void evictsIdleBuckets() {
+        int keys = 1_000;
+        for (int key = 0; key < keys; key++) {
+            rateLimiter.tryAcquire(key);
+            rateLimiter.tryAcquire("key" + key);
+        }
+        assertEquals(2 * keys, rateLimiter.size());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS + 1));
+        // every new bucket sweeps a few buckets of its stripe.
+        for (int key = keys; key < 2 * keys; key++) {
+            rateLimiter.tryAcquire(key);
+            rateLimiter.tryAcquire("key" + key);
+        }
+        int size = rateLimiter.size();
+        assertTrue(String.valueOf(size), size >= 2 * keys && size < 3 * keys);
+        // the buckets left are still found after buckets were moved by evictions.
+        for (int key = keys; key < 2 * keys; key++) {
+            for (int i = 1; i < BURST; i++) {
+                assertTrue(rateLimiter.tryAcquire(key));
+            }
+            assertFalse(rateLimiter.tryAcquire(key));
+        }
+    }
+}